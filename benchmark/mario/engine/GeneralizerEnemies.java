@@ -39,8 +39,42 @@ import ch.idsia.benchmark.mario.engine.sprites.Sprite;
 
 public class GeneralizerEnemies
 {
+// the generalization of every (ZLevel, sprite kind) pair, looked up by el & 0xff
+private static final int Z_LEVELS = 3;
+private static final int UNKNOWN = 0x100;
+private static final byte[][] tables = new byte[Z_LEVELS][256];
+private static final boolean[][] unknown = new boolean[Z_LEVELS][256];
+
+static
+{
+    for (int z = 0; z < Z_LEVELS; z++)
+        for (int i = 0; i < 256; i++)
+        {
+            final int g = generalize((byte) i, z);
+            tables[z][i] = (byte) g;
+            unknown[z][i] = (g & ~0xff) == UNKNOWN;
+        }
+}
 
 public static byte ZLevelGeneralization(byte el, int ZLevel)
+{
+    if (ZLevel < 0 || ZLevel >= Z_LEVELS)
+        return el;
+    return tables[ZLevel][el & 0xff];
+}
+
+/**
+ * @return whether the sprite kind is one the generalization does not know of at the Z level
+ */
+public static boolean isUnknown(byte el, int ZLevel)
+{
+    return ZLevel >= 0 && ZLevel < Z_LEVELS && unknown[ZLevel][el & 0xff];
+}
+
+/**
+ * @return generalization of the sprite kind, with {@link #UNKNOWN} set for kinds the Z level does not know of
+ */
+private static int generalize(byte el, int ZLevel)
 {
     switch (ZLevel)
     {
@@ -86,8 +120,7 @@ public static byte ZLevelGeneralization(byte el, int ZLevel)
                 /*case (Sprite.KIND_PRINCESS):
                     return Sprite.KIND_PRINCESS;*/
             }
-            System.err.println("Z1 UNKOWN el = " + el);
-            return el;
+            return UNKNOWN | (el & 0xff);
         case (2):
             switch (el)
             {
@@ -115,8 +148,7 @@ public static byte ZLevelGeneralization(byte el, int ZLevel)
                 /*case (Sprite.KIND_PRINCESS):
                     return Sprite.KIND_PRINCESS;*/
             }
-            System.err.println("ERROR: Z2 UNKNOWNN el = " + el);
-            return 1;
+            return UNKNOWN | 1;
     }
     return el; //TODO: Throw unknown ZLevel exception
 }
@@ -51,7 +51,43 @@ public static final int LADDER = 61;
 public static final int TOP_OF_LADDER = 61;
 public static final int PRINCESS = 5;
 
+// the generalization of every (ZLevel, tile) pair, looked up by el & 0xff
+private static final int Z_LEVELS = 3;
+private static final int UNKNOWN = 0x100;
+private static final byte[][] tables = new byte[Z_LEVELS][256];
+private static final boolean[][] unknown = new boolean[Z_LEVELS][256];
+
+static
+{
+    for (int z = 0; z < Z_LEVELS; z++)
+        for (int i = 0; i < 256; i++)
+        {
+            final int g = generalize((byte) i, z);
+            tables[z][i] = (byte) g;
+            unknown[z][i] = (g & ~0xff) == UNKNOWN;
+        }
+}
+
 public static byte ZLevelGeneralization(byte el, int ZLevel)
+{
+    if (ZLevel < 0 || ZLevel >= Z_LEVELS)
+        return el;
+    return tables[ZLevel][el & 0xff];
+}
+
+/**
+ * @return whether the tile or the Z level is one the generalization does not know of, a hint at a level tiles
+ *         bug; such tiles are passed through as they are
+ */
+public static boolean isUnknown(byte el, int ZLevel)
+{
+    return ZLevel < 0 || ZLevel >= Z_LEVELS || unknown[ZLevel][el & 0xff];
+}
+
+/**
+ * @return generalization of the tile, with {@link #UNKNOWN} set for tiles the Z level does not know of
+ */
+private static int generalize(byte el, int ZLevel)
 {
     if (el == 0)
         return 0;
@@ -186,9 +222,7 @@ public static byte ZLevelGeneralization(byte el, int ZLevel)
                 case (-1):
                     return PRINCESS;
             }
-            System.err.println("ZLevelMapElementGeneralization: Unknown value el = " + el + " Possible Level tiles bug; " +
-                    "Please, inform sergey@idsia.ch or julian@togelius.com. Thanks!");
-            return el;
+            return UNKNOWN | (el & 0xff);
         case (2):
             switch (el)
             {
@@ -223,7 +257,6 @@ public static byte ZLevelGeneralization(byte el, int ZLevel)
             }
             return 1;  // everything else is "something", so it is 1
     }
-    System.err.println("Unkown ZLevel Z" + ZLevel);
-    return el; //TODO: Throw unknown ZLevel exception
+    return UNKNOWN | (el & 0xff);
 }
 }
@@ -44,7 +44,6 @@ public static boolean areLabels = false;
 public static boolean isCameraCenteredOnMario = false;
 public static Integer FPS = 24;
 public static int MaxFPS = 100;
-public static boolean areFrozenCreatures = false;
 
 public static boolean isVisualization = true;
 public static boolean isGameplayStopped = false;
@@ -55,8 +54,6 @@ private static GameViewer GameViewer = null;
 
 public static int mariosecondMultiplier = 15;
 
-public static boolean isPowerRestoration;
-
 // required for rendering grid in ch/idsia/benchmark/mario/engine/sprites/Sprite.java
 public static int receptiveFieldWidth = 19;
 public static int receptiveFieldHeight = 19;
@@ -128,7 +128,7 @@ public void render(Graphics g, int tick)
             {
                 g.setColor(Color.BLUE);
                 int yo = 0;
-                if (x >= 0 && y >= 0 && x < level.length && y < level.height) yo = level.data[x][y];
+                if (x >= 0 && y >= 0 && x < level.length && y < level.height) yo = level.getBlockData(x, y);
                 if (yo > 0) yo = (int) (Math.sin(yo / 4.0f * Math.PI) * 8);
                 g.drawString(String.valueOf(1), (x << 4) - xCam, (y << 4) - yCam - yo + LevelScene.cellSize);
             }
@@ -147,7 +147,7 @@ public void render(Graphics g, int tick)
                     animTime = 2;
                 }
                 int yo = 0;
-                if (x >= 0 && y >= 0 && x < level.length && y < level.height) yo = level.data[x][y];
+                if (x >= 0 && y >= 0 && x < level.length && y < level.height) yo = level.getBlockData(x, y);
                 if (yo > 0) yo = (int) (Math.sin(yo / 4.0f * Math.PI) * 8);
                 if (yo < 0) yo = 0;
                 g.drawImage(Art.level[(b % 16) / 4 * 4 + animTime][b / 16], (x << 4) - xCam, (y << 4) - yCam - yo, null);
@@ -156,7 +156,7 @@ public void render(Graphics g, int tick)
             {
             int animTime = (tickCount / 3) % 4;
             int yo = 0;
-            if (x >= 0 && y >= 0 && x < level.length && y < level.height) yo = level.data[x][y];
+            if (x >= 0 && y >= 0 && x < level.length && y < level.height) yo = level.getBlockData(x, y);
             if (yo > 0) yo = (int) (Math.sin((yo - cameraOffSet) / 4.0f * Math.PI) * 8);
             g.drawImage(Art.mapSprites[(4 + animTime)][0], (x << 4) - xCam, (y << 4) - yCam - yo, null);
             }*/
@@ -28,7 +28,8 @@
 package ch.idsia.benchmark.mario.engine;
 
 import ch.idsia.benchmark.mario.engine.level.Level;
-import ch.idsia.benchmark.mario.engine.level.LevelGenerator;
+import ch.idsia.benchmark.mario.engine.level.LevelCache;
+import ch.idsia.benchmark.mario.engine.level.LevelCodec;
 import ch.idsia.benchmark.mario.engine.level.SpriteTemplate;
 import ch.idsia.benchmark.mario.engine.sprites.*;
 import ch.idsia.benchmark.mario.environments.Environment;
@@ -36,13 +37,15 @@ import ch.idsia.tools.MarioAIOptions;
 
 import java.awt.*;
 import java.io.DataInputStream;
-import java.io.FileOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 
+/**
+ * A single simulated world. All live game state (level, sprites, Mario, kill counters and creature physics)
+ * belongs to the instance, so independent worlds can be ticked side by side within one JVM.
+ */
 public final class LevelScene implements SpriteContext
 {
 public static final boolean[] defaultKeys = new boolean[Environment.numberOfKeys];
@@ -54,6 +57,14 @@ final public List<Sprite> sprites = new ArrayList<Sprite>();
 final private List<Sprite> spritesToAdd = new ArrayList<Sprite>();
 final private List<Sprite> spritesToRemove = new ArrayList<Sprite>();
 
+// cosmetic sprites are recycled; in headless mode they are not created at all
+private boolean headless = false;
+// whether reset publishes the display options to GlobalOptions, see setDisplayOwner
+private boolean displayOwner = true;
+final private List<Sparkle> sparklePool = new ArrayList<Sparkle>();
+final private List<Particle> particlePool = new ArrayList<Particle>();
+final private List<CoinAnim> coinAnimPool = new ArrayList<CoinAnim>();
+
 public Level level;
 public Mario mario;
 public float xCam, yCam, xCamO, yCamO;
@@ -65,11 +76,12 @@ private int timeLeft;
 private int width;
 private int height;
 
-private static boolean onLadder = false;
-
-private Random randomGen = new Random(0);
+// every random draw of the world; gameplay and visual effects use separate streams, so that headless
+// mode, which skips the effects, does not change the course of an episode
+private final WorldRandom random = new WorldRandom(0);
+private final WorldRandom cosmeticRandom = new WorldRandom(0);
 
-final private List<Float> enemiesFloatsList = new ArrayList<Float>();
+final private SpriteIndex spriteIndex = new SpriteIndex();
 final private float[] marioFloatPos = new float[2];
 final private int[] marioState = new int[11];
 private int numberOfHiddenCoinsGained = 0;
@@ -92,16 +104,24 @@ private int levelType;
 private int levelDifficulty;
 private int levelLength;
 private int levelHeight;
-public static int killedCreaturesTotal;
-public static int killedCreaturesByFireBall;
-public static int killedCreaturesByStomp;
-public static int killedCreaturesByShell;
+public int killedCreaturesTotal;
+public int killedCreaturesByFireBall;
+public int killedCreaturesByStomp;
+public int killedCreaturesByShell;
+
+private float creaturesGravity;
+private float creaturesWind;
+private float creaturesIce;
+// gameplay switches of the options, kept per world so that worlds with different options do not mix
+private boolean frozenCreatures;
+private boolean powerRestoration;
 
 private Replayer replayer;
 
 //    private int[] args; //passed to reset method. ATTENTION: not cloned.
 
-public LevelScene()
+// tile behaviors are shared read-only by every world, so they are loaded once per class
+static
 {
     try
     {
@@ -121,43 +141,35 @@ public LevelScene()
 
 public float[] getEnemiesFloatPos()
 {
-    enemiesFloatsList.clear();
-    for (Sprite sprite : sprites)
+    // TODO:[M]: add unit tests for getEnemiesFloatPos involving all kinds of creatures
+    final float[] enemiesFloatsPosArray = new float[3 * spriteIndex.enemyCount()];
+    int i = 0;
+    for (int e = 0, n = spriteIndex.size(); e < n; e++)
     {
-        // TODO:[M]: add unit tests for getEnemiesFloatPos involving all kinds of creatures
-        if (sprite.isDead()) continue;
-        switch (sprite.kind)
+        final int kind = spriteIndex.getKind(e);
+        if (SpriteIndex.isEnemy(kind))
         {
-            case Sprite.KIND_GOOMBA:
-            case Sprite.KIND_BULLET_BILL:
-            case Sprite.KIND_ENEMY_FLOWER:
-            case Sprite.KIND_GOOMBA_WINGED:
-            case Sprite.KIND_GREEN_KOOPA:
-            case Sprite.KIND_GREEN_KOOPA_WINGED:
-            case Sprite.KIND_RED_KOOPA:
-            case Sprite.KIND_RED_KOOPA_WINGED:
-            case Sprite.KIND_SPIKY:
-            case Sprite.KIND_SPIKY_WINGED:
-            case Sprite.KIND_SHELL:
-            {
-                enemiesFloatsList.add((float) sprite.kind);
-                enemiesFloatsList.add(sprite.x - mario.x);
-                enemiesFloatsList.add(sprite.y - mario.y);
-            }
+            enemiesFloatsPosArray[i++] = kind;
+            enemiesFloatsPosArray[i++] = spriteIndex.getX(e) - mario.x;
+            enemiesFloatsPosArray[i++] = spriteIndex.getY(e) - mario.y;
         }
     }
-
-    float[] enemiesFloatsPosArray = new float[enemiesFloatsList.size()];
-
-    int i = 0;
-    for (Float F : enemiesFloatsList)
-        enemiesFloatsPosArray[i++] = F;
-
     return enemiesFloatsPosArray;
 }
 
+/**
+ * @return the sprites as they are after the last tick, reset or restore; the index is rebuilt in place
+ */
+public SpriteIndex getSpriteIndex()
+{
+    return spriteIndex;
+}
+
 public int fireballsOnScreen = 0;
 
+final private SpriteGrid spriteGrid = new SpriteGrid();
+private int[] candidates = new int[32];
+
 List<Shell> shellsToCheck = new ArrayList<Shell>();
 
 public void checkShellCollide(Shell shell)
@@ -257,10 +269,11 @@ public void tick()
                         if ((tickCount - x * 2) % 100 == 0)
                         {
 //                                    xCannon = x;
-                            for (int i = 0; i < 8; i++)
-                            {
-                                addSprite(new Sparkle(x * cellSize + 8, y * cellSize + (int) (Math.random() * cellSize), (float) Math.random() * dir, 0, 0, 1, 5));
-                            }
+                            if (!headless)
+                                for (int i = 0; i < 8; i++)
+                                {
+                                    addSparkle(x * cellSize + 8, y * cellSize + (int) (cosmeticRandom.nextDouble() * cellSize), (float) cosmeticRandom.nextDouble() * dir, 0, 0, 1, 5);
+                                }
                             addSprite(new BulletBill(this, x * cellSize + 8 + dir * 8, y * cellSize + 15, dir));
 
 //                                    hasShotCannon = true;
@@ -286,13 +299,37 @@ public void tick()
     }
 
 
-    for (Sprite sprite : sprites)
-        sprite.collideCheck();
+    // Sprites only interact within 16 pixels horizontally and 24 vertically (the tallest sprite), so
+    // the checks below visit the grid cells around the checked sprite, in sprite list order.
+    spriteGrid.build(sprites);
+    if (candidates.length < sprites.size())
+        candidates = new int[Math.max(sprites.size(), candidates.length * 2)];
+
+    // creatures only collide with Mario; stomping one lifts him, after which the remaining
+    // candidates are looked up again around his new position
+    float xMario = mario.x, yMario = mario.y;
+    int n = spriteGrid.query(xMario - 16, yMario - 24, xMario + 16, yMario + 24, candidates);
+    for (int c = 0; c < n; c++)
+    {
+        final int i = candidates[c];
+        sprites.get(i).collideCheck();
+        if (mario.x != xMario || mario.y != yMario)
+        {
+            xMario = mario.x;
+            yMario = mario.y;
+            n = spriteGrid.query(xMario - 16, yMario - 24, xMario + 16, yMario + 24, candidates);
+            c = -1;
+            while (c + 1 < n && candidates[c + 1] <= i)
+                c++;
+        }
+    }
 
     for (Shell shell : shellsToCheck)
     {
-        for (Sprite sprite : sprites)
+        n = spriteGrid.query(shell.x - 16, shell.y - 24, shell.x + 16, shell.y + 24, candidates);
+        for (int c = 0; c < n; c++)
         {
+            final Sprite sprite = sprites.get(candidates[c]);
             if (sprite != shell && !shell.dead)
             {
                 if (sprite.shellCollideCheck(shell))
@@ -312,28 +349,125 @@ public void tick()
     shellsToCheck.clear();
 
     for (Fireball fireball : fireballsToCheck)
-        for (Sprite sprite : sprites)
+    {
+        n = spriteGrid.query(fireball.x - 16, fireball.y - 24, fireball.x + 16, fireball.y + 24, candidates);
+        for (int c = 0; c < n; c++)
+        {
+            final Sprite sprite = sprites.get(candidates[c]);
             if (sprite != fireball && !fireball.dead)
                 if (sprite.fireballCollideCheck(fireball))
                     fireball.die();
+        }
+    }
     fireballsToCheck.clear();
 
 
-    sprites.addAll(0, spritesToAdd);
-    sprites.removeAll(spritesToRemove);
+    compactSprites();
+    spriteIndex.build(sprites, mario, level.length);
+}
+
+/**
+ * Drops removed sprites and puts the sprites added during the tick in front of the list, in the order
+ * they were added, in one pass over the list. Removed cosmetic sprites go back to their pools.
+ */
+private void compactSprites()
+{
+    final int size = sprites.size();
+    int kept = 0;
+    for (int i = 0; i < size; i++)
+    {
+        final Sprite sprite = sprites.get(i);
+        if (sprite.removed)
+            release(sprite);
+        else
+            sprites.set(kept++, sprite);
+    }
+    int added = 0;
+    for (Sprite sprite : spritesToAdd)
+        if (!sprite.removed)
+            added++;
+
+    final int newSize = kept + added;
+    for (int i = sprites.size(); i > newSize; i--)
+        sprites.remove(i - 1);
+    for (int i = sprites.size(); i < newSize; i++)
+        sprites.add(null);
+    for (int i = kept - 1; i >= 0; i--)
+        sprites.set(i + added, sprites.get(i));
+    added = 0;
+    for (Sprite sprite : spritesToAdd)
+        if (!sprite.removed)
+            sprites.set(added++, sprite);
+        else
+            release(sprite);
+
+    for (Sprite sprite : spritesToRemove)
+        sprite.removed = false;
     spritesToAdd.clear();
     spritesToRemove.clear();
 }
 
+private void release(final Sprite sprite)
+{
+    switch (sprite.kind)
+    {
+        case Sprite.KIND_SPARCLE:
+            sparklePool.add((Sparkle) sprite);
+            break;
+        case Sprite.KIND_PARTICLE:
+            particlePool.add((Particle) sprite);
+            break;
+        case Sprite.KIND_COIN_ANIM:
+            coinAnimPool.add((CoinAnim) sprite);
+            break;
+    }
+}
+
+public void addSparkle(int x, int y, float xa, float ya, int xPic, int yPic, int timeSpan)
+{
+    if (headless)
+        return;
+    final int life = 10 + (int) (cosmeticRandom.nextDouble() * timeSpan);
+    final int n = sparklePool.size();
+    addSprite(n == 0 ? new Sparkle(x, y, xa, ya, xPic, yPic, life) : sparklePool.remove(n - 1).init(x, y, xa, ya, xPic, yPic, life));
+}
+
+public double cosmeticRandom()
+{
+    return cosmeticRandom.nextDouble();
+}
+
+private void addParticle(int x, int y, float xa, float ya)
+{
+    if (headless)
+        return;
+    final int xPic = cosmeticRandom.nextInt(2);
+    final int n = particlePool.size();
+    addSprite(n == 0 ? new Particle(x, y, xa, ya, xPic, 0) : particlePool.remove(n - 1).init(x, y, xa, ya, xPic, 0));
+}
+
+private void addCoinAnim(int xTile, int yTile)
+{
+    if (headless)
+        return;
+    final int n = coinAnimPool.size();
+    addSprite(n == 0 ? new CoinAnim(xTile, yTile) : coinAnimPool.remove(n - 1).init(xTile, yTile));
+}
+
 public void addSprite(Sprite sprite)
 {
+    sprite.spriteContext = this;
     spritesToAdd.add(sprite);
     sprite.tick();
 }
 
 public void removeSprite(Sprite sprite)
 {
-    spritesToRemove.add(sprite);
+    if (!sprite.removed)
+    {
+        sprite.removed = true;
+        spritesToRemove.add(sprite);
+    }
 }
 
 public void bump(int x, int y, boolean canBreakBricks)
@@ -343,7 +477,7 @@ public void bump(int x, int y, boolean canBreakBricks)
     if ((Level.TILE_BEHAVIORS[block & 0xff] & Level.BIT_BUMPABLE) > 0)
     {
         if (block == 1)
-            Mario.gainHiddenBlock();
+            mario.gainHiddenBlock();
         bumpInto(x, y - 1);
         byte blockData = level.getBlockData(x, y);
         if (blockData < 0)
@@ -357,13 +491,13 @@ public void bump(int x, int y, boolean canBreakBricks)
 
         if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_SPECIAL) > 0)
         {
-            if (randomGen.nextInt(5) == 0 && level.difficulty > 4)
+            if (random.nextInt(5) == 0 && level.difficulty > 4)
             {
                 addSprite(new GreenMushroom(this, x * cellSize + 8, y * cellSize + 8));
                 ++level.counters.greenMushrooms;
             } else
             {
-                if (!Mario.large)
+                if (!mario.large)
                 {
                     addSprite(new Mushroom(this, x * cellSize + 8, y * cellSize + 8));
                     ++level.counters.mushrooms;
@@ -375,8 +509,8 @@ public void bump(int x, int y, boolean canBreakBricks)
             }
         } else
         {
-            Mario.gainCoin();
-            addSprite(new CoinAnim(x, y));
+            mario.gainCoin();
+            addCoinAnim(x, y);
         }
     }
 
@@ -388,7 +522,7 @@ public void bump(int x, int y, boolean canBreakBricks)
             level.setBlock(x, y, (byte) 0);
             for (int xx = 0; xx < 2; xx++)
                 for (int yy = 0; yy < 2; yy++)
-                    addSprite(new Particle(x * cellSize + xx * 8 + 4, y * cellSize + yy * 8 + 4, (xx * 2 - 1) * 4, (yy * 2 - 1) * 4 - 8));
+                    addParticle(x * cellSize + xx * 8 + 4, y * cellSize + yy * 8 + 4, (xx * 2 - 1) * 4, (yy * 2 - 1) * 4 - 8);
         } else
         {
             level.setBlockData(x, y, (byte) 4);
@@ -401,9 +535,9 @@ public void bumpInto(int x, int y)
     byte block = level.getBlock(x, y);
     if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_PICKUPABLE) > 0)
     {
-        Mario.gainCoin();
+        mario.gainCoin();
         level.setBlock(x, y, (byte) 0);
-        addSprite(new CoinAnim(x, y + 1));
+        addCoinAnim(x, y + 1);
     }
 
     for (Sprite sprite : sprites)
@@ -514,12 +648,14 @@ public void reset(MarioAIOptions marioAIOptions)
 //        System.out.println("levelType = " + levelType);
 
 
-    GlobalOptions.FPS = marioAIOptions.getFPS();
+    // a world that is never drawn leaves the display settings to the visualized one
+    if (displayOwner && !headless)
+        GlobalOptions.FPS = marioAIOptions.getFPS();
 //        System.out.println("GlobalOptions.FPS = " + GlobalOptions.FPS);
-    GlobalOptions.isPowerRestoration = marioAIOptions.isPowerRestoration();
+    powerRestoration = marioAIOptions.isPowerRestoration();
 //        System.out.println("GlobalOptions.isPowerRestoration = " + GlobalOptions.isPowerRestoration);
 //    GlobalOptions.isPauseWorld = marioAIOptions.isPauseWorld();
-    GlobalOptions.areFrozenCreatures = marioAIOptions.isFrozenCreatures();
+    frozenCreatures = marioAIOptions.isFrozenCreatures();
 //        System.out.println("GlobalOptions = " + GlobalOptions.isPauseWorld);
 //        GlobalOptions.isTimer = marioAIOptions.isTimer();
 //        System.out.println("GlobalOptions.isTimer = " + GlobalOptions.isTimer);
@@ -527,7 +663,8 @@ public void reset(MarioAIOptions marioAIOptions)
     this.setTimeLimit(marioAIOptions.getTimeLimit());
 //        System.out.println("this.getTimeLimit() = " + this.getTimeLimit());
 //        this.isViewAlwaysOnTop() ? 1 : 0, setUpOptions[13]
-    GlobalOptions.isVisualization = marioAIOptions.isVisualization();
+    if (displayOwner && !headless)
+        GlobalOptions.isVisualization = marioAIOptions.isVisualization();
 //        System.out.println("visualization = " + visualization);
 
     killedCreaturesTotal = 0;
@@ -544,7 +681,7 @@ public void reset(MarioAIOptions marioAIOptions)
         {
 //            replayer.openNextReplayFile();
             replayer.openFile("level.lvl");
-            level = (Level) replayer.readObject();
+            level = replayer.readLevel();
             level.counters.resetUncountableCounters();
 //            replayer.closeFile();
 //            replayer.closeRecorder();
@@ -557,14 +694,14 @@ public void reset(MarioAIOptions marioAIOptions)
             e.printStackTrace();
         }
     } else
-        level = LevelGenerator.createLevel(marioAIOptions);
+        level = LevelCache.getShared().getLevel(marioAIOptions);
 
     String fileName = marioAIOptions.getLevelFileName();
     if (!fileName.equals(""))
     {
         try
         {
-            Level.save(level, new ObjectOutputStream(new FileOutputStream(fileName)));
+            LevelCodec.write(level, new File(fileName), false);
         } catch (IOException e)
         {
             System.err.println("[Mario AI Exception] : Cannot write to file " + fileName);
@@ -572,24 +709,25 @@ public void reset(MarioAIOptions marioAIOptions)
         }
     }
     this.levelSeed = level.randomSeed;
+    final WorldRandom root = new WorldRandom(levelSeed);
+    random.setState(root.nextLong());
+    cosmeticRandom.setState(root.nextLong());
     this.levelLength = level.length;
     this.levelHeight = level.height;
     this.levelType = level.type;
     this.levelDifficulty = level.difficulty;
 
-    Sprite.spriteContext = this;
     sprites.clear();
     this.width = GlobalOptions.VISUAL_COMPONENT_WIDTH;
     this.height = GlobalOptions.VISUAL_COMPONENT_HEIGHT;
 
-    Sprite.setCreaturesGravity(marioAIOptions.getCreaturesGravity());
-    Sprite.setCreaturesWind(marioAIOptions.getWind());
-    Sprite.setCreaturesIce(marioAIOptions.getIce());
-    Mario.resetStatic(marioAIOptions);
+    creaturesGravity = marioAIOptions.getCreaturesGravity();
+    creaturesWind = marioAIOptions.getWind();
+    creaturesIce = marioAIOptions.getIce();
 
     bonusPoints = -1;
 
-    mario = new Mario(this);
+    mario = new Mario(this, marioAIOptions);
     //System.out.println("mario = " + mario);
     memo = "";
 
@@ -598,6 +736,177 @@ public void reset(MarioAIOptions marioAIOptions)
     timeLeft = timeLimit * GlobalOptions.mariosecondMultiplier;
 
     tickCount = 0;
+    spriteIndex.build(sprites, mario, level.length);
+}
+
+/**
+ * Copy of the world taken between two ticks. Blocks are kept as a {@link Level.BlockState}, template
+ * states and counters in flat primitive arrays, sprites as detached copies whose mutual references are stored as
+ * indices. A snapshot may be restored any number of times, e.g. once per branch of a search tree.
+ */
+public static final class Snapshot
+{
+private Level level;
+private Level.BlockState blocks;
+private int[] trace;
+
+private int[] templateTicks;
+private boolean[] templateDead;
+private int[] templateSprites;
+
+private Sprite[] sprites = new Sprite[16];
+private int spriteCount;
+private int marioIndex;
+private int carriedIndex;
+private Sprite carried;
+
+private final int[] ints = new int[13];
+private final float[] floats = new float[4];
+private final long[] longs = new long[2];
+private String memo;
+}
+
+/**
+ * @return a new snapshot of the current state
+ * @see #snapshot(Snapshot)
+ */
+public Snapshot snapshot()
+{
+    return snapshot(null);
+}
+
+/**
+ * Saves the current state. Must be called between ticks.
+ *
+ * @param reuse snapshot of this world whose arrays may be overwritten, or null to allocate a new one
+ * @return the snapshot holding the current state
+ */
+public Snapshot snapshot(Snapshot reuse)
+{
+    final Snapshot s = reuse != null ? reuse : new Snapshot();
+    if (s.level != level)
+    {
+        s.trace = null;
+        final int templates = level.getSpriteTemplateList().length;
+        s.templateTicks = new int[templates];
+        s.templateDead = new boolean[templates];
+        s.templateSprites = new int[templates];
+    }
+    s.level = level;
+    s.blocks = level.saveBlocks(s.blocks);
+    if (mario.isTrace())
+    {
+        if (s.trace == null)
+            s.trace = new int[level.length * (level.height + 1)];
+        level.copyTraceTo(s.trace);
+    }
+
+    final int n = sprites.size();
+    if (s.sprites.length < n)
+        s.sprites = new Sprite[Math.max(n, s.sprites.length * 2)];
+    for (int i = 0; i < n; i++)
+        s.sprites[i] = sprites.get(i).copy();
+    for (int i = n; i < s.spriteCount; i++)
+        s.sprites[i] = null;
+    s.spriteCount = n;
+    s.marioIndex = sprites.indexOf(mario);
+    s.carriedIndex = mario.carried == null ? -1 : sprites.indexOf(mario.carried);
+    s.carried = mario.carried != null && s.carriedIndex < 0 ? mario.carried.copy() : null;
+
+    final SpriteTemplate[] templates = level.getSpriteTemplateList();
+    for (int i = 0; i < templates.length; i++)
+    {
+        final SpriteTemplate st = templates[i];
+        s.templateTicks[i] = st.lastVisibleTick;
+        s.templateDead[i] = st.isDead;
+        s.templateSprites[i] = st.sprite == null ? -1 : sprites.indexOf(st.sprite);
+    }
+
+    final int[] ints = s.ints;
+    ints[0] = tickCount;
+    ints[1] = startTime;
+    ints[2] = timeLeft;
+    ints[3] = bonusPoints;
+    ints[4] = fireballsOnScreen;
+    ints[5] = killedCreaturesTotal;
+    ints[6] = killedCreaturesByFireBall;
+    ints[7] = killedCreaturesByStomp;
+    ints[8] = killedCreaturesByShell;
+    ints[9] = numberOfHiddenCoinsGained;
+    ints[10] = level.counters.mushrooms;
+    ints[11] = level.counters.flowers;
+    ints[12] = level.counters.greenMushrooms;
+    final float[] floats = s.floats;
+    floats[0] = xCam;
+    floats[1] = yCam;
+    floats[2] = xCamO;
+    floats[3] = yCamO;
+    s.longs[0] = random.getState();
+    s.longs[1] = cosmeticRandom.getState();
+    s.memo = memo;
+    return s;
+}
+
+/**
+ * Puts the world back into the state saved by {@link #snapshot(Snapshot)}. Sprites are restored as
+ * fresh copies, so {@link #mario} and the sprite list refer to new objects afterwards.
+ *
+ * @param s snapshot taken from this world during the current episode
+ */
+public void restore(final Snapshot s)
+{
+    if (s.level != level)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : snapshot belongs to another level");
+
+    level.restoreBlocks(s.blocks);
+    if (s.trace != null)
+        level.copyTraceFrom(s.trace);
+
+    sprites.clear();
+    spritesToAdd.clear();
+    spritesToRemove.clear();
+    shellsToCheck.clear();
+    fireballsToCheck.clear();
+    for (int i = 0; i < s.spriteCount; i++)
+        sprites.add(s.sprites[i].copy());
+    mario = (Mario) sprites.get(s.marioIndex);
+    if (s.carriedIndex >= 0)
+        mario.carried = sprites.get(s.carriedIndex);
+    else if (s.carried != null)
+        mario.carried = s.carried.copy();
+
+    final SpriteTemplate[] templates = level.getSpriteTemplateList();
+    for (int i = 0; i < templates.length; i++)
+    {
+        final SpriteTemplate st = templates[i];
+        st.lastVisibleTick = s.templateTicks[i];
+        st.isDead = s.templateDead[i];
+        st.sprite = s.templateSprites[i] < 0 ? null : sprites.get(s.templateSprites[i]);
+    }
+
+    final int[] ints = s.ints;
+    tickCount = ints[0];
+    startTime = ints[1];
+    timeLeft = ints[2];
+    bonusPoints = ints[3];
+    fireballsOnScreen = ints[4];
+    killedCreaturesTotal = ints[5];
+    killedCreaturesByFireBall = ints[6];
+    killedCreaturesByStomp = ints[7];
+    killedCreaturesByShell = ints[8];
+    numberOfHiddenCoinsGained = ints[9];
+    level.counters.mushrooms = ints[10];
+    level.counters.flowers = ints[11];
+    level.counters.greenMushrooms = ints[12];
+    final float[] floats = s.floats;
+    xCam = floats[0];
+    yCam = floats[1];
+    xCamO = floats[2];
+    yCamO = floats[3];
+    random.setState(s.longs[0]);
+    cosmeticRandom.setState(s.longs[1]);
+    memo = s.memo;
+    spriteIndex.build(sprites, mario, level.length);
 }
 
 public float[] getMarioFloatPos()
@@ -646,6 +955,57 @@ public int getGreenMushroomMode()
     return greenMushroomMode;
 }
 
+public float getCreaturesGravity()
+{
+    return creaturesGravity;
+}
+
+public float getCreaturesWind()
+{
+    return creaturesWind;
+}
+
+public float getCreaturesIce()
+{
+    return creaturesIce;
+}
+
+/**
+ * Only the world the visual component shows writes the display options of its reset (<code>-vis</code>,
+ * <code>-fps</code>) into GlobalOptions; other worlds in the same JVM must not switch the display.
+ */
+public void setDisplayOwner(final boolean displayOwner)
+{
+    this.displayOwner = displayOwner;
+}
+
+public boolean areCreaturesFrozen()
+{
+    return frozenCreatures;
+}
+
+public boolean isPowerRestoration()
+{
+    return powerRestoration;
+}
+
+/**
+ * In headless mode no purely cosmetic sprites (sparkles, brick particles, coin animations) are created,
+ * sprites get no sprite sheets and animation frames are not computed, so the simulation neither needs
+ * nor loads Art and the java.awt image classes. The game plays the same; only enemy observations, where
+ * such sprites show up as empty cells, can differ. Set it before {@link #reset}: sprites created while
+ * headless cannot be rendered.
+ */
+public void setHeadless(final boolean headless)
+{
+    this.headless = headless;
+}
+
+public boolean isHeadless()
+{
+    return headless;
+}
+
 public int getBonusPoints()
 {
     return bonusPoints;
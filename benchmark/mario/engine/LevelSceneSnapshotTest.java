@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  Neither the name of the Mario AI nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine;
+
+import ch.idsia.benchmark.mario.engine.level.Level;
+import ch.idsia.benchmark.mario.engine.sprites.Mario;
+import ch.idsia.tools.MarioAIOptions;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Takes and restores snapshots in random order, with reused snapshots and with many branches from one root, and
+ * checks that every restore brings back exactly the blocks and collision state that were saved.
+ */
+public class LevelSceneSnapshotTest
+{
+private static final int SLOTS = 4;
+private static final int BRANCHES = 100;
+private static final int BRANCH_TICKS = 30;
+
+private static void play(final LevelScene scene, final Random random, final int ticks)
+{
+    final boolean[] action = new boolean[6];
+    for (int t = 0; t < ticks && scene.mario.getStatus() == Mario.STATUS_RUNNING; t++)
+    {
+        action[Mario.KEY_LEFT] = random.nextInt(8) == 0;
+        action[Mario.KEY_RIGHT] = random.nextInt(4) > 0;
+        action[Mario.KEY_JUMP] = random.nextBoolean();
+        action[Mario.KEY_SPEED] = random.nextBoolean();
+        scene.performAction(action);
+        scene.tick();
+    }
+}
+
+private static boolean blocking(final Level level, final int x, final int y, final float ya)
+{
+    final int behavior = Level.TILE_BEHAVIORS[level.getBlock(x, y) & 0xff];
+    return (behavior & Level.BIT_BLOCK_ALL) != 0 || (ya > 0 && (behavior & Level.BIT_BLOCK_UPPER) != 0)
+            || (ya < 0 && (behavior & Level.BIT_BLOCK_LOWER) != 0);
+}
+
+private static void assertRestored(final String message, final Level level, final byte[] map, final byte[] data)
+{
+    final byte[] restoredMap = new byte[map.length];
+    final byte[] restoredData = new byte[data.length];
+    level.copyBlocksTo(restoredMap, restoredData);
+    assertArrayEquals(message, map, restoredMap);
+    assertArrayEquals(message, data, restoredData);
+    for (int x = -1; x <= level.length; x++)
+        for (int y = -1; y <= level.height; y++)
+            for (int ya = -1; ya <= 1; ya++)
+                if (level.isBlocking(x, y, 0, ya) != blocking(level, x, y, ya))
+                    fail(message + ": collision state of " + x + "," + y + " differs from the block");
+}
+
+@Test
+public void testRandomRestoresOfReusedSnapshots()
+{
+    for (int seed = 0; seed < 30; seed++)
+    {
+        final LevelScene scene = new LevelScene();
+        scene.reset(new MarioAIOptions("-ls " + seed + " -ld " + seed % 6 + " -lt " + seed % 3));
+        final Random random = new Random(seed);
+        final int cells = scene.level.length * scene.level.height;
+        final LevelScene.Snapshot[] snapshots = new LevelScene.Snapshot[SLOTS];
+        final byte[][] maps = new byte[SLOTS][cells];
+        final byte[][] data = new byte[SLOTS][cells];
+        for (int op = 0; op < 400; op++)
+        {
+            final int kind = random.nextInt(10);
+            final int slot = random.nextInt(SLOTS);
+            if (kind < 6)
+                play(scene, random, random.nextInt(40));
+            else if (kind < 8)
+            {
+                snapshots[slot] = scene.snapshot(snapshots[slot]);
+                scene.level.copyBlocksTo(maps[slot], data[slot]);
+            } else if (snapshots[slot] != null)
+            {
+                scene.restore(snapshots[slot]);
+                assertRestored("seed " + seed + ", operation " + op, scene.level, maps[slot], data[slot]);
+            }
+        }
+    }
+}
+
+@Test
+public void testBranchesFromOneRoot()
+{
+    for (int seed = 0; seed < 12; seed++)
+    {
+        // large Mario running into the level breaks bricks in most branches
+        final LevelScene scene = new LevelScene();
+        scene.reset(new MarioAIOptions("-ls " + seed + " -ld " + seed % 8 + " -lt 1 -mm 2"));
+        final Random random = new Random(seed);
+        play(scene, random, 80 + seed * 40);
+        final LevelScene.Snapshot root = scene.snapshot();
+        final int cells = scene.level.length * scene.level.height;
+        final byte[] rootMap = new byte[cells];
+        final byte[] rootData = new byte[cells];
+        scene.level.copyBlocksTo(rootMap, rootData);
+
+        // every branch replays one of a few action streams and must end where its first run ended
+        final byte[][] endMaps = new byte[10][];
+        for (int branch = 0; branch < BRANCHES; branch++)
+        {
+            scene.restore(root);
+            assertRestored("seed " + seed + ", branch " + branch, scene.level, rootMap, rootData);
+            play(scene, new Random(branch % endMaps.length), BRANCH_TICKS);
+            final byte[] map = new byte[cells];
+            scene.level.copyBlocksTo(map, new byte[cells]);
+            if (endMaps[branch % endMaps.length] == null)
+                endMaps[branch % endMaps.length] = map;
+            else
+                assertArrayEquals("seed " + seed + ", branch " + branch, endMaps[branch % endMaps.length], map);
+        }
+    }
+}
+}
@@ -172,6 +172,8 @@ public void reset()
 
 public void tick()
 {
+    // restoring a LevelScene snapshot replaces Mario
+    this.mario = marioEnvironment.getMario();
 //    this.render(thisVolatileImageGraphics, CheaterKeyboardAgent.isObserveLevel ? level.length : 0);
     this.render(thisVolatileImageGraphics);
 
@@ -289,18 +291,18 @@ public void render(Graphics g)
     drawStringDropShadow(g, "LENGTH:" + (int) mario.x / 16 + " of " + marioEnvironment.getLevelLength(), 0, 3, 7);
     drawStringDropShadow(g, "HEIGHT:" + (int) mario.y / 16 + " of " + marioEnvironment.getLevelHeight(), 0, 4, 7);
     drawStringDropShadow(g, "by Fire  : " + marioEnvironment.getKilledCreaturesByFireBall(), 19, 1, 1);
-//    drawStringDropShadow(g, "COINS    : " + df.format(Mario.coins), 0, 4, 4);
+//    drawStringDropShadow(g, "COINS    : " + df.format(mario.coins), 0, 4, 4);
     drawStringDropShadow(g, "by Shell : " + marioEnvironment.getKilledCreaturesByShell(), 19, 2, 1);
     // COINS:
     g.drawImage(Art.level[0][2], 2, 43, 10, 10, null);
-    drawStringDropShadow(g, "x" + df.format(Mario.coins), 1, 5, 4);
+    drawStringDropShadow(g, "x" + df.format(mario.coins), 1, 5, 4);
     g.drawImage(Art.items[0][0], 47, 43, 11, 11, null);
-    drawStringDropShadow(g, "x" + df.format(Mario.mushroomsDevoured), 7, 5, 4);
+    drawStringDropShadow(g, "x" + df.format(mario.mushroomsDevoured), 7, 5, 4);
     g.drawImage(Art.items[1][0], 89, 43, 11, 11, null);
-    drawStringDropShadow(g, "x" + df.format(Mario.flowersDevoured), 12, 5, 4);
-//    drawStringDropShadow(g, "MUSHROOMS: " + df.format(Mario.mushroomsDevoured), 0, 5, 4);
+    drawStringDropShadow(g, "x" + df.format(mario.flowersDevoured), 12, 5, 4);
+//    drawStringDropShadow(g, "MUSHROOMS: " + df.format(mario.mushroomsDevoured), 0, 5, 4);
     drawStringDropShadow(g, "by Stomp : " + marioEnvironment.getKilledCreaturesByStomp(), 19, 3, 1);
-//    drawStringDropShadow(g, "FLOWERS  : " + df.format(Mario.flowersDevoured), 0, 6, 4);
+//    drawStringDropShadow(g, "FLOWERS  : " + df.format(mario.flowersDevoured), 0, 6, 4);
 
     if (GlobalOptions.isRecording)
     {
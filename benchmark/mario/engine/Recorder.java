@@ -27,6 +27,8 @@
 
 package ch.idsia.benchmark.mario.engine;
 
+import ch.idsia.benchmark.mario.engine.level.Level;
+import ch.idsia.benchmark.mario.engine.level.LevelCodec;
 import ch.idsia.tools.ReplayerOptions;
 
 import java.io.*;
@@ -91,6 +93,14 @@ public void writeObject(Object object) throws IOException
     oos.flush();
 }
 
+/**
+ * Writes the level in the format of {@link LevelCodec}, without the Mario trace.
+ */
+public void writeLevel(Level level) throws IOException
+{
+    LevelCodec.write(level, zos, false);
+}
+
 public void closeFile() throws IOException
 {
     zos.flush();
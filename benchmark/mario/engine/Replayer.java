@@ -27,6 +27,8 @@
 
 package ch.idsia.benchmark.mario.engine;
 
+import ch.idsia.benchmark.mario.engine.level.Level;
+import ch.idsia.benchmark.mario.engine.level.LevelCodec;
 import ch.idsia.benchmark.mario.environments.Environment;
 import ch.idsia.tools.ReplayerOptions;
 
@@ -126,6 +128,14 @@ public Object readObject() throws IOException, ClassNotFoundException
     return res;
 }
 
+/**
+ * Reads the level of the open file, written by {@link Recorder#writeLevel} or, in older replays, as an object.
+ */
+public Level readLevel() throws IOException
+{
+    return LevelCodec.read(zf.getInputStream(ze));
+}
+
 public void closeFile() throws IOException
 {
 //    fis.close();
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  Neither the name of the Mario AI nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine;
+
+import ch.idsia.benchmark.mario.engine.sprites.Sprite;
+
+import java.util.List;
+
+/**
+ * Uniform grid of 16x16 cells over the sprite list of one tick, stored as a small hash of cell chains.
+ * Queries return list indices in ascending order, so callers visit candidates in the same order as a
+ * scan of the whole list would.
+ */
+final class SpriteGrid
+{
+private static final int BUCKETS = 64;
+
+private final int[] head = new int[BUCKETS];
+private int[] next = new int[32];
+private int[] cellX = new int[32];
+private int[] cellY = new int[32];
+private int size;
+
+/**
+ * Indexes the sprites by the cell their current position falls into.
+ */
+void build(final List<Sprite> sprites)
+{
+    size = sprites.size();
+    if (next.length < size)
+    {
+        final int capacity = Math.max(size, next.length * 2);
+        next = new int[capacity];
+        cellX = new int[capacity];
+        cellY = new int[capacity];
+    }
+    for (int b = 0; b < BUCKETS; b++)
+        head[b] = -1;
+    // insert from the back so every chain is ordered by list index
+    for (int i = size - 1; i >= 0; i--)
+    {
+        final Sprite sprite = sprites.get(i);
+        final int cx = cell(sprite.x);
+        final int cy = cell(sprite.y);
+        final int b = bucket(cx, cy);
+        cellX[i] = cx;
+        cellY[i] = cy;
+        next[i] = head[b];
+        head[b] = i;
+    }
+}
+
+/**
+ * Collects the sprites in all cells touched by the given rectangle.
+ *
+ * @param out receives list indices in ascending order; must hold at least size() entries
+ * @return number of indices written
+ */
+int query(final float x0, final float y0, final float x1, final float y1, final int[] out)
+{
+    final int cx0 = cell(x0), cx1 = cell(x1);
+    final int cy0 = cell(y0), cy1 = cell(y1);
+    int n = 0;
+    for (int cx = cx0; cx <= cx1; cx++)
+        for (int cy = cy0; cy <= cy1; cy++)
+            for (int i = head[bucket(cx, cy)]; i >= 0; i = next[i])
+                if (cellX[i] == cx && cellY[i] == cy)
+                    out[n++] = i;
+    // chains are sorted, merging several of them is a short insertion sort
+    for (int i = 1; i < n; i++)
+    {
+        final int v = out[i];
+        int j = i - 1;
+        while (j >= 0 && out[j] > v)
+        {
+            out[j + 1] = out[j];
+            j--;
+        }
+        out[j + 1] = v;
+    }
+    return n;
+}
+
+int size()
+{
+    return size;
+}
+
+private static int cell(final float v)
+{
+    return ((int) Math.floor(v)) >> 4;
+}
+
+private static int bucket(final int cx, final int cy)
+{
+    return (cx * 31 + cy) & (BUCKETS - 1);
+}
+}
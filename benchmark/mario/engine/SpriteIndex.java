@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  Neither the name of the Mario AI nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine;
+
+import ch.idsia.benchmark.mario.engine.sprites.Sprite;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Observable sprites of one tick, built once at the end of {@link LevelScene#tick()} and read by all
+ * observation functions instead of scanning the sprite list each. Holds every sprite that is not dead and
+ * not Mario, with its kind, cell and position, in sprite list order, plus a second ordering of the same
+ * entries by map column so that a receptive field only visits the columns it covers.
+ * <p/>
+ * Within one cell entries keep their sprite list order, so writing query results into a grid in order
+ * gives the same grid as a scan of the whole list.
+ */
+public final class SpriteIndex
+{
+private int size;
+private int enemies;
+private byte[] kind = new byte[32];
+private int[] mapX = new int[32];
+private int[] mapY = new int[32];
+private float[] x = new float[32];
+private float[] y = new float[32];
+
+// entries by column, byColumn[k] in column columnOf[k]; sprites right of the level share the last column,
+// sprites left of it are not in this ordering since no receptive field shows them. Sorted rather than
+// bucketed, so that building costs time in the number of sprites and not in the length of the level
+private int[] byColumn = new int[32];
+private int[] columnOf = new int[32];
+private long[] sortKeys = new long[32];
+private int sorted;
+private int columns;
+
+void build(final List<Sprite> sprites, final Sprite mario, final int levelLength)
+{
+    final int n = sprites.size();
+    if (kind.length < n)
+    {
+        final int capacity = Math.max(n, kind.length * 2);
+        kind = new byte[capacity];
+        mapX = new int[capacity];
+        mapY = new int[capacity];
+        x = new float[capacity];
+        y = new float[capacity];
+        byColumn = new int[capacity];
+        columnOf = new int[capacity];
+        sortKeys = new long[capacity];
+    }
+    columns = levelLength + 1;
+
+    size = 0;
+    sorted = 0;
+    enemies = 0;
+    for (int i = 0; i < n; i++)
+    {
+        final Sprite sprite = sprites.get(i);
+        if (sprite == mario || sprite.isDead())
+            continue;
+        kind[size] = sprite.kind;
+        mapX[size] = sprite.mapX;
+        mapY[size] = sprite.mapY;
+        x[size] = sprite.x;
+        y[size] = sprite.y;
+        if (isEnemy(sprite.kind))
+            enemies++;
+        // column above the entry number: the keys are distinct and sort by column and within a column in
+        // list order
+        if (sprite.mapX >= 0)
+            sortKeys[sorted++] = (long) column(sprite.mapX) << 32 | size;
+        size++;
+    }
+
+    Arrays.sort(sortKeys, 0, sorted);
+    for (int k = 0; k < sorted; k++)
+    {
+        byColumn[k] = (int) sortKeys[k];
+        columnOf[k] = (int) (sortKeys[k] >>> 32);
+    }
+}
+
+private int column(final int cellX)
+{
+    return Math.min(cellX, columns - 1);
+}
+
+/**
+ * Collects the entries inside a rectangle of cells. Cells with a negative coordinate never match, as in
+ * the observations.
+ *
+ * @param out receives entry numbers, ordered by column and within a column by sprite list order; must
+ *            hold at least {@link #size()} entries
+ * @return number of entries written
+ */
+public int query(final int x0, final int y0, final int width, final int height, final int[] out)
+{
+    final int x1 = x0 + width - 1;
+    final int y1 = y0 + height - 1;
+    final int c0 = column(Math.max(x0, 0));
+    final int c1 = x1 < 0 ? -1 : column(x1);
+    // first entry in column c0 or right of it
+    int low = 0;
+    for (int high = sorted; low < high; )
+    {
+        final int middle = (low + high) >>> 1;
+        if (columnOf[middle] < c0)
+            low = middle + 1;
+        else
+            high = middle;
+    }
+    int n = 0;
+    for (int k = low; k < sorted && columnOf[k] <= c1; k++)
+    {
+        final int e = byColumn[k];
+        if (mapX[e] >= x0 && mapX[e] <= x1 && mapY[e] >= 0 && mapY[e] >= y0 && mapY[e] <= y1)
+            out[n++] = e;
+    }
+    return n;
+}
+
+/**
+ * @return whether sprites of the kind count as enemies in {@link LevelScene#getEnemiesFloatPos()}
+ */
+public static boolean isEnemy(final int kind)
+{
+    switch (kind)
+    {
+        case Sprite.KIND_GOOMBA:
+        case Sprite.KIND_BULLET_BILL:
+        case Sprite.KIND_ENEMY_FLOWER:
+        case Sprite.KIND_GOOMBA_WINGED:
+        case Sprite.KIND_GREEN_KOOPA:
+        case Sprite.KIND_GREEN_KOOPA_WINGED:
+        case Sprite.KIND_RED_KOOPA:
+        case Sprite.KIND_RED_KOOPA_WINGED:
+        case Sprite.KIND_SPIKY:
+        case Sprite.KIND_SPIKY_WINGED:
+        case Sprite.KIND_SHELL:
+            return true;
+        default:
+            return false;
+    }
+}
+
+public int size()
+{
+    return size;
+}
+
+/**
+ * @return number of entries for which {@link #isEnemy(int)} holds
+ */
+public int enemyCount()
+{
+    return enemies;
+}
+
+public byte getKind(final int entry)
+{
+    return kind[entry];
+}
+
+public int getMapX(final int entry)
+{
+    return mapX[entry];
+}
+
+public int getMapY(final int entry)
+{
+    return mapY[entry];
+}
+
+public float getX(final int entry)
+{
+    return x[entry];
+}
+
+public float getY(final int entry)
+{
+    return y[entry];
+}
+}
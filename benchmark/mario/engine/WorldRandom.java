@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  Neither the name of the Mario AI nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine;
+
+/**
+ * SplitMix64 generator, the algorithm behind java.util.SplittableRandom, with the whole state kept in a
+ * single long so that a world can save and restore it in snapshots. Every world owns its generators;
+ * instances are not thread-safe.
+ */
+public final class WorldRandom
+{
+private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+private long seed;
+
+public WorldRandom(final long seed)
+{
+    this.seed = seed;
+}
+
+/**
+ * @return a new generator seeded from this one, for an independent stream of draws
+ */
+public WorldRandom split()
+{
+    return new WorldRandom(nextLong());
+}
+
+public long nextLong()
+{
+    return mix64(nextSeed());
+}
+
+/**
+ * @return uniformly distributed value in [0, bound)
+ */
+public int nextInt(final int bound)
+{
+    if (bound <= 0)
+        throw new IllegalArgumentException("bound must be positive");
+    int r = mix32(nextSeed());
+    final int m = bound - 1;
+    if ((bound & m) == 0)
+        r &= m;
+    else
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1)
+            ;
+    return r;
+}
+
+/**
+ * @return uniformly distributed value in [0, 1), a drop-in for Math.random()
+ */
+public double nextDouble()
+{
+    return (nextLong() >>> 11) * 0x1.0p-53;
+}
+
+public long getState()
+{
+    return seed;
+}
+
+public void setState(final long seed)
+{
+    this.seed = seed;
+}
+
+private long nextSeed()
+{
+    return seed += GOLDEN_GAMMA;
+}
+
+private static long mix64(long z)
+{
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+}
+
+private static int mix32(long z)
+{
+    z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+    return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+}
+}
@@ -35,7 +35,7 @@ public class Level implements Serializable
 {
 private static final long serialVersionUID = -2222762134065697580L;
 
-static public class objCounters implements Serializable
+static public class objCounters implements Serializable, Cloneable
 {
     public int deadEndsCount = 0;
     public int cannonsCount = 0;
@@ -94,6 +94,17 @@ static public class objCounters implements Serializable
         flowers = 0;
         greenMushrooms = 0;
     }
+
+    public objCounters copy()
+    {
+        try
+        {
+            return (objCounters) clone();
+        } catch (CloneNotSupportedException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
 }
 
 public static final String[] BIT_DESCRIPTIONS = {//
@@ -118,7 +129,8 @@ public static final int BIT_BREAKABLE = 1 << 5;
 public static final int BIT_PICKUPABLE = 1 << 6;
 public static final int BIT_ANIMATED = 1 << 7;
 
-public static objCounters counters;
+// transient: written explicitly in writeObject to keep the stream layout of earlier versions
+public transient objCounters counters;
 
 //private final int FILE_HEADER = 0x271c4178;
 public int length;
@@ -127,12 +139,32 @@ public int randomSeed;
 public int type;
 public int difficulty;
 
-public byte[][] map;
-public byte[][] data;
+// cells are stored column after column, cell x * height + y; the Mario trace has height + 1 rows per column.
+// Levels saved before the flat layout kept them as arrays of columns named map, data, marioTrace and
+// spriteTemplates, which readObject still accepts.
+private byte[] blocks;
+private byte[] blockData;
 // Experimental feature: Mario TRACE
-public int[][] marioTrace;
+private int[] trace;
+
+private SpriteTemplate[] templates;
+private transient SpriteTemplate[] spriteTemplateList;
+
+// cells (x * height + y) whose block data is still counting down, see tick(); collected from data when null
+private transient int[] activeCells;
+private transient int activeCellCount;
+private transient long[] activeCellBits;
 
-public SpriteTemplate[][] spriteTemplates;
+// the last BLOCK_CHANGE_LOG cells (x * height + y) changed by setBlock or setBlockData, for observers of the map
+// and for restoreBlocks; the countdown of tick() is not recorded
+public static final int BLOCK_CHANGE_LOG = 64;
+private transient int[] changedCells;
+private transient long blockChangeCount;
+
+// solidity of every cell (x * height + y) for isBlocking, derived from TILE_BEHAVIORS on first use and kept
+// up to date by setBlock: for each word of 64 cells the BIT_BLOCK_ALL, BIT_BLOCK_UPPER and BIT_BLOCK_LOWER
+// words are stored next to each other
+private transient long[] collisionBits;
 
 public int xExit;
 public int yExit;
@@ -151,13 +183,11 @@ public Level(int length, int height)
 //        System.out.println("height = " + height);
     try
     {
-        map = new byte[length][height];
-//        System.out.println("map = " + map);
-        data = new byte[length][height];
-//        System.out.println("data = " + data);
-        spriteTemplates = new SpriteTemplate[length][height];
+        blocks = new byte[length * height];
+        blockData = new byte[length * height];
+        templates = new SpriteTemplate[length * height];
 
-        marioTrace = new int[length][height + 1];
+        trace = new int[length * (height + 1)];
     } catch (OutOfMemoryError e)
     {
         System.err.println("Java: MarioAI MEMORY EXCEPTION: OutOfMemory exception. Exiting...");
@@ -169,6 +199,40 @@ public Level(int length, int height)
 //        System.out.println("observation = " + observation);
 }
 
+/**
+ * Copy constructor, see {@link #copy()}.
+ */
+private Level(final Level source)
+{
+    length = source.length;
+    height = source.height;
+    randomSeed = source.randomSeed;
+    type = source.type;
+    difficulty = source.difficulty;
+    xExit = source.xExit;
+    yExit = source.yExit;
+    blocks = source.blocks.clone();
+    blockData = source.blockData.clone();
+    trace = source.trace.clone();
+    templates = new SpriteTemplate[source.templates.length];
+    for (int i = 0; i < templates.length; i++)
+        if (source.templates[i] != null)
+            templates[i] = source.templates[i].copy();
+    if (source.counters != null)
+        counters = source.counters.copy();
+    if (source.collisionBits != null)
+        collisionBits = source.collisionBits.clone();
+}
+
+/**
+ * @return a level that can be played without touching this one: blocks, block data, sprite templates, trace and
+ *         counters are copied, while sprites spawned from the templates of this level are not
+ */
+public Level copy()
+{
+    return new Level(this);
+}
+
 public static void loadBehaviors(DataInputStream dis) throws IOException
 {
     dis.readFully(Level.TILE_BEHAVIORS);
@@ -191,14 +255,48 @@ public static void save(Level lvl, ObjectOutputStream oos) throws IOException
 }
 
 /**
- * Animates the unbreakable brick when smashed from below by Mario
+ * Animates the unbreakable brick when smashed from below by Mario. Only the cells recorded by
+ * setBlockData are visited, so block data must not be raised by writing to the array directly.
  */
 public void tick()
 {
-    // TODO:!!H! Optimize this!
-    for (int x = 0; x < length; x++)
-        for (int y = 0; y < height; y++)
-            if (data[x][y] > 0) data[x][y]--;
+    if (activeCells == null)
+        collectActiveCells();
+    for (int i = 0; i < activeCellCount; )
+    {
+        final int cell = activeCells[i];
+        if (blockData[cell] > 0 && --blockData[cell] > 0)
+            i++;
+        else
+        {
+            activeCellBits[cell >> 6] &= ~(1L << cell);
+            activeCells[i] = activeCells[--activeCellCount];
+        }
+    }
+}
+
+private void collectActiveCells()
+{
+    activeCells = new int[16];
+    activeCellCount = 0;
+    activeCellBits = new long[(length * height + 63) >> 6];
+    for (int cell = 0; cell < blockData.length; cell++)
+        if (blockData[cell] > 0)
+            activate(cell);
+}
+
+private void activate(final int cell)
+{
+    if ((activeCellBits[cell >> 6] & (1L << cell)) != 0)
+        return;
+    activeCellBits[cell >> 6] |= 1L << cell;
+    if (activeCellCount == activeCells.length)
+    {
+        final int[] grown = new int[activeCells.length * 2];
+        System.arraycopy(activeCells, 0, grown, 0, activeCellCount);
+        activeCells = grown;
+    }
+    activeCells[activeCellCount++] = cell;
 }
 
 public byte getBlockCapped(int x, int y)
@@ -207,7 +305,7 @@ public byte getBlockCapped(int x, int y)
     if (y < 0) y = 0;
     if (x >= length) x = length - 1;
     if (y >= height) y = height - 1;
-    return map[x][y];
+    return blocks[x * height + y];
 }
 
 public byte getBlock(int x, int y)
@@ -216,7 +314,27 @@ public byte getBlock(int x, int y)
     if (y < 0) return 0;
     if (x >= length) x = length - 1;
     if (y >= height) y = height - 1;
-    return map[x][y];
+    return blocks[x * height + y];
+}
+
+/**
+ * @return the block types of all cells, cell x * height + y; for fast reading only, changes have to go
+ *         through {@link #setBlock} so that observers and collision checks see them
+ */
+public byte[] getBlocks()
+{
+    return blocks;
+}
+
+// backing arrays for LevelCodec, which fills levels no one observes yet
+byte[] getBlockDataArray()
+{
+    return blockData;
+}
+
+int[] getTraceArray()
+{
+    return trace;
 }
 
 public void setBlock(int x, int y, byte b)
@@ -225,7 +343,37 @@ public void setBlock(int x, int y, byte b)
     if (y < 0) return;
     if (x >= length) return;
     if (y >= height) return;
-    map[x][y] = b;
+    final int cell = x * height + y;
+    if (blocks[cell] == b) return;
+    blocks[cell] = b;
+    if (collisionBits != null)
+        setCollisionBits(cell, b);
+    logChange(cell);
+}
+
+private void logChange(final int cell)
+{
+    if (changedCells == null)
+        changedCells = new int[BLOCK_CHANGE_LOG];
+    changedCells[(int) (blockChangeCount++ % BLOCK_CHANGE_LOG)] = cell;
+}
+
+/**
+ * @return number of block changes so far; an observer that is more than {@link #BLOCK_CHANGE_LOG}
+ *         changes behind has to read the whole map again
+ */
+public long getBlockChangeCount()
+{
+    return blockChangeCount;
+}
+
+/**
+ * @param change number of the change, one of the last {@link #BLOCK_CHANGE_LOG} ones
+ * @return cell x * height + y of the change
+ */
+public int getChangedCell(final long change)
+{
+    return changedCells[(int) (change % BLOCK_CHANGE_LOG)];
 }
 
 public void setBlockData(int x, int y, byte b)
@@ -234,7 +382,12 @@ public void setBlockData(int x, int y, byte b)
     if (y < 0) return;
     if (x >= length) return;
     if (y >= height) return;
-    data[x][y] = b;
+    final int cell = x * height + y;
+    if (blockData[cell] == b) return;
+    blockData[cell] = b;
+    if (b > 0 && activeCells != null)
+        activate(cell);
+    logChange(cell);
 }
 
 public byte getBlockData(int x, int y)
@@ -243,17 +396,43 @@ public byte getBlockData(int x, int y)
     if (y < 0) return 0;
     if (x >= length) return 0;
     if (y >= height) return 0;
-    return data[x][y];
+    return blockData[x * height + y];
 }
 
 public boolean isBlocking(int x, int y, float xa, float ya)
 {
-    byte block = getBlock(x, y);
-    boolean blocking = ((TILE_BEHAVIORS[block & 0xff]) & BIT_BLOCK_ALL) > 0;
-    blocking |= (ya > 0) && ((TILE_BEHAVIORS[block & 0xff]) & BIT_BLOCK_UPPER) > 0;
-    blocking |= (ya < 0) && ((TILE_BEHAVIORS[block & 0xff]) & BIT_BLOCK_LOWER) > 0;
+    if (collisionBits == null)
+        buildCollisionBits();
+    // clamped as in getBlock, which reads the empty tile 0 above the level
+    if (y < 0)
+    {
+        final int behavior = TILE_BEHAVIORS[0];
+        return (behavior & BIT_BLOCK_ALL) != 0 || (ya > 0 && (behavior & BIT_BLOCK_UPPER) != 0) || (ya < 0 && (behavior & BIT_BLOCK_LOWER) != 0);
+    }
+    if (x < 0) x = 0;
+    if (x >= length) x = length - 1;
+    if (y >= height) y = height - 1;
+    final int cell = x * height + y;
+    final int word = 3 * (cell >> 6);
+    final long directional = ya > 0 ? collisionBits[word + 1] : ya < 0 ? collisionBits[word + 2] : 0;
+    return ((collisionBits[word] | directional) & (1L << cell)) != 0;
+}
+
+private void buildCollisionBits()
+{
+    collisionBits = new long[3 * ((length * height + 63) >> 6)];
+    for (int cell = 0; cell < blocks.length; cell++)
+        setCollisionBits(cell, blocks[cell]);
+}
 
-    return blocking;
+private void setCollisionBits(final int cell, final byte block)
+{
+    final int behavior = TILE_BEHAVIORS[block & 0xff];
+    final int word = 3 * (cell >> 6);
+    final long bit = 1L << cell;
+    collisionBits[word] = (behavior & BIT_BLOCK_ALL) != 0 ? collisionBits[word] | bit : collisionBits[word] & ~bit;
+    collisionBits[word + 1] = (behavior & BIT_BLOCK_UPPER) != 0 ? collisionBits[word + 1] | bit : collisionBits[word + 1] & ~bit;
+    collisionBits[word + 2] = (behavior & BIT_BLOCK_LOWER) != 0 ? collisionBits[word + 2] | bit : collisionBits[word + 2] & ~bit;
 }
 
 public SpriteTemplate getSpriteTemplate(int x, int y)
@@ -262,7 +441,7 @@ public SpriteTemplate getSpriteTemplate(int x, int y)
     if (y < 0) return null;
     if (x >= length) return null;
     if (y >= height) return null;
-    return spriteTemplates[x][y];
+    return templates[x * height + y];
 }
 
 public boolean setSpriteTemplate(int x, int y, SpriteTemplate spriteTemplate)
@@ -271,16 +450,235 @@ public boolean setSpriteTemplate(int x, int y, SpriteTemplate spriteTemplate)
     if (y < 0) return false;
     if (x >= length) return false;
     if (y >= height) return false;
-    spriteTemplates[x][y] = spriteTemplate;
+    templates[x * height + y] = spriteTemplate;
+    spriteTemplateList = null;
     return true;
 }
 
+/**
+ * @return all sprite templates placed in the level, in column order
+ */
+public SpriteTemplate[] getSpriteTemplateList()
+{
+    if (spriteTemplateList == null)
+    {
+        int n = 0;
+        for (SpriteTemplate template : templates)
+            if (template != null)
+                n++;
+        spriteTemplateList = new SpriteTemplate[n];
+        n = 0;
+        for (SpriteTemplate template : templates)
+            if (template != null)
+                spriteTemplateList[n++] = template;
+    }
+    return spriteTemplateList;
+}
+
+/**
+ * Copies block types and block data into flat arrays of length * height cells, column after column.
+ */
+public void copyBlocksTo(final byte[] flatMap, final byte[] flatData)
+{
+    System.arraycopy(blocks, 0, flatMap, 0, blocks.length);
+    System.arraycopy(blockData, 0, flatData, 0, blockData.length);
+}
+
+/**
+ * Sets block types and block data from flat arrays as filled by {@link #copyBlocksTo}. Only cells that differ are
+ * written and recorded in the change log; prefer {@link #restoreBlocks}, which does not compare every cell.
+ */
+public void copyBlocksFrom(final byte[] flatMap, final byte[] flatData)
+{
+    for (int cell = 0; cell < blocks.length; cell++)
+        setCell(cell, flatMap[cell], flatData[cell]);
+    if (activeCells != null)
+        collectActiveCells();
+}
+
+/**
+ * Blocks, block data and counting cells of a level, see {@link Level#saveBlocks(BlockState)}.
+ */
+public static final class BlockState
+{
+private Level level;
+private byte[] blocks;
+private byte[] blockData;
+private long changeCount;
+private int[] activeCells = new int[16];
+private int activeCellCount;
+}
+
+/**
+ * Saves blocks, block data and the cells counting down in tick(). A state saved from this level before is
+ * brought up to date by copying only the cells changed since, as long as they are still in the change log.
+ *
+ * @param reuse state whose arrays may be overwritten, or null to allocate a new one
+ * @return the state holding the current blocks
+ */
+public BlockState saveBlocks(final BlockState reuse)
+{
+    final BlockState s = reuse != null ? reuse : new BlockState();
+    if (activeCells == null)
+        collectActiveCells();
+    if (s.level != this || blockChangeCount - s.changeCount > BLOCK_CHANGE_LOG)
+    {
+        if (s.blocks == null || s.blocks.length != blocks.length)
+        {
+            s.blocks = new byte[blocks.length];
+            s.blockData = new byte[blockData.length];
+        }
+        System.arraycopy(blocks, 0, s.blocks, 0, blocks.length);
+        System.arraycopy(blockData, 0, s.blockData, 0, blockData.length);
+    } else
+    {
+        for (long change = s.changeCount; change < blockChangeCount; change++)
+        {
+            final int cell = getChangedCell(change);
+            s.blocks[cell] = blocks[cell];
+            s.blockData[cell] = blockData[cell];
+        }
+        for (int i = 0; i < s.activeCellCount; i++)
+            s.blockData[s.activeCells[i]] = blockData[s.activeCells[i]];
+        for (int i = 0; i < activeCellCount; i++)
+            s.blockData[activeCells[i]] = blockData[activeCells[i]];
+    }
+    s.level = this;
+    s.changeCount = blockChangeCount;
+    if (s.activeCells.length < activeCellCount)
+        s.activeCells = new int[activeCells.length];
+    System.arraycopy(activeCells, 0, s.activeCells, 0, activeCellCount);
+    s.activeCellCount = activeCellCount;
+    return s;
+}
+
+/**
+ * Puts back the blocks saved by {@link #saveBlocks(BlockState)}. Only the cells in the change log since the save
+ * and the counting cells are written, unless the log has been overrun; collision checks keep their state and
+ * observers of the map see the restored cells as changes. Afterwards the state counts as saved now, so that
+ * restoring it again only replays the changes made after this restore.
+ *
+ * @param s state saved from this level
+ */
+public void restoreBlocks(final BlockState s)
+{
+    if (s.level != this)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : block state belongs to another level");
+    if (activeCells == null)
+        collectActiveCells();
+    final long changes = blockChangeCount;
+    if (changes - s.changeCount > BLOCK_CHANGE_LOG)
+    {
+        for (int cell = 0; cell < blocks.length; cell++)
+            setCell(cell, s.blocks[cell], s.blockData[cell]);
+    } else
+    {
+        // oldest first: the changes logged here only overwrite entries older than s.changeCount
+        for (long change = s.changeCount; change < changes; change++)
+        {
+            final int cell = getChangedCell(change);
+            setCell(cell, s.blocks[cell], s.blockData[cell]);
+        }
+    }
+    for (int i = 0; i < activeCellCount; i++)
+    {
+        final int cell = activeCells[i];
+        setCell(cell, s.blocks[cell], s.blockData[cell]);
+        activeCellBits[cell >> 6] &= ~(1L << cell);
+    }
+    activeCellCount = 0;
+    for (int i = 0; i < s.activeCellCount; i++)
+    {
+        final int cell = s.activeCells[i];
+        setCell(cell, s.blocks[cell], s.blockData[cell]);
+        activate(cell);
+    }
+    // the level equals the state again: the writes above need not be replayed by the next restore
+    s.changeCount = blockChangeCount;
+}
+
+private void setCell(final int cell, final byte block, final byte data)
+{
+    if (blocks[cell] == block && blockData[cell] == data)
+        return;
+    if (blocks[cell] != block)
+    {
+        blocks[cell] = block;
+        if (collisionBits != null)
+            setCollisionBits(cell, block);
+    }
+    blockData[cell] = data;
+    logChange(cell);
+}
+
+/**
+ * Counts a visit of Mario to the cell; y may be one past the bottom row.
+ */
+public void addMarioTrace(int x, int y)
+{
+    if (x < 0 || x >= length || y < 0 || y > height) return;
+    ++trace[x * (height + 1) + y];
+}
+
+/**
+ * @return copy of the Mario trace as an array of columns of height + 1 cells
+ */
+public int[][] getMarioTrace()
+{
+    final int[][] columns = new int[length][height + 1];
+    for (int x = 0; x < length; x++)
+        System.arraycopy(trace, x * (height + 1), columns[x], 0, height + 1);
+    return columns;
+}
+
+public void copyTraceTo(final int[] flatTrace)
+{
+    System.arraycopy(trace, 0, flatTrace, 0, trace.length);
+}
+
+public void copyTraceFrom(final int[] flatTrace)
+{
+    System.arraycopy(flatTrace, 0, trace, 0, trace.length);
+}
+
 private void readObject(ObjectInputStream aInputStream) throws ClassNotFoundException, IOException
 {
-    aInputStream.defaultReadObject();
+    final ObjectInputStream.GetField fields = aInputStream.readFields();
+    length = fields.get("length", 0);
+    height = fields.get("height", 0);
+    randomSeed = fields.get("randomSeed", 0);
+    type = fields.get("type", 0);
+    difficulty = fields.get("difficulty", 0);
+    xExit = fields.get("xExit", 0);
+    yExit = fields.get("yExit", 0);
+    blocks = (byte[]) fields.get("blocks", null);
+    if (blocks == null)
+    {
+        // saved as arrays of columns
+        blocks = new byte[length * height];
+        blockData = new byte[length * height];
+        templates = new SpriteTemplate[length * height];
+        trace = new int[length * (height + 1)];
+        flatten((Object[]) fields.get("map", null), blocks, height);
+        flatten((Object[]) fields.get("data", null), blockData, height);
+        flatten((Object[]) fields.get("spriteTemplates", null), templates, height);
+        flatten((Object[]) fields.get("marioTrace", null), trace, height + 1);
+    } else
+    {
+        blockData = (byte[]) fields.get("blockData", null);
+        templates = (SpriteTemplate[]) fields.get("templates", null);
+        trace = (int[]) fields.get("trace", null);
+    }
     counters = (Level.objCounters) aInputStream.readObject();
 }
 
+private static void flatten(final Object[] columns, final Object flat, final int columnLength)
+{
+    if (columns == null) return;
+    for (int x = 0; x < columns.length; x++)
+        System.arraycopy(columns[x], 0, flat, x * columnLength, columnLength);
+}
+
 private void writeObject(ObjectOutputStream aOutputStream) throws IOException
 {
     aOutputStream.defaultWriteObject();
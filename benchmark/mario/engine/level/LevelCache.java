@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import ch.idsia.tools.MarioAIOptions;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Keeps recently generated levels, so that episodes played on the same options do not generate their level
+ * again. Levels are keyed by the options that take part in generation (seed, type, difficulty, size, enemies,
+ * exit and the level features) and bounded by their total number of cells; the least recently used level is
+ * dropped first. Every call returns a copy, so play never changes a cached level.
+ * <p/>
+ * Levels loaded from a file (<code>-ls</code> with a file name) are read every time.
+ * <p/>
+ * When the options of upcoming episodes are known, {@link #prefetch} generates their levels on background
+ * threads while the current episode is played, so that the reset of the next episode only copies a ready level.
+ */
+public final class LevelCache
+{
+public static final int DEFAULT_MAX_CELLS = 1 << 21;
+
+private static final LevelCache shared = new LevelCache(DEFAULT_MAX_CELLS);
+
+// access order: the eldest entry is the least recently used level
+private final LinkedHashMap<String, Level> levels = new LinkedHashMap<String, Level>(16, 0.75f, true);
+// levels being generated by prefetch
+private final HashMap<String, FutureTask<Level>> pending = new HashMap<String, FutureTask<Level>>();
+private ExecutorService prefetcher;
+private int maxCells;
+private long cells;
+private long hits;
+private long misses;
+
+/**
+ * @param maxCells total number of cells (length * height) of the levels kept; 0 disables caching
+ */
+public LevelCache(final int maxCells)
+{
+    if (maxCells < 0)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : level cache size must not be negative: " + maxCells);
+    this.maxCells = maxCells;
+}
+
+/**
+ * @return the cache used by every LevelScene
+ */
+public static LevelCache getShared()
+{
+    return shared;
+}
+
+/**
+ * @return copy of the level for the options, generated on the first request; the result equals
+ *         <code>LevelGenerator.createLevel(args)</code>
+ */
+public Level getLevel(final MarioAIOptions args)
+{
+    final String key = getKey(args);
+    if (key == null)
+        return LevelGenerator.createLevel(args);
+
+    Level level;
+    FutureTask<Level> prefetched = null;
+    synchronized (this)
+    {
+        level = levels.get(key);
+        if (level == null)
+            prefetched = pending.get(key);
+        if (level != null || prefetched != null)
+            hits++;
+        else
+            misses++;
+    }
+    if (prefetched != null)
+        level = await(prefetched);
+    if (level == null)
+    {
+        // generated outside the lock, so that worlds on other threads are not held up
+        level = LevelGenerator.createLevel(args);
+        put(key, level);
+    }
+    return level.copy();
+}
+
+/**
+ * Starts generating the level for the options on a background thread, unless it is cached or already being
+ * generated. The options are copied, so the caller may change them right away; a later {@link #getLevel} with
+ * the same options waits for this level instead of generating it again.
+ */
+public void prefetch(final MarioAIOptions args)
+{
+    final String key = getKey(args);
+    if (key == null)
+        return;
+    final MarioAIOptions options = new MarioAIOptions(args.asString());
+    synchronized (this)
+    {
+        if (maxCells == 0 || levels.containsKey(key) || pending.containsKey(key))
+            return;
+        final FutureTask<Level> task = new FutureTask<Level>(new Callable<Level>()
+        {
+            public Level call()
+            {
+                try
+                {
+                    final Level level = LevelGenerator.createLevel(options);
+                    put(key, level);
+                    return level;
+                } finally
+                {
+                    synchronized (LevelCache.this)
+                    {
+                        pending.remove(key);
+                    }
+                }
+            }
+        });
+        pending.put(key, task);
+        getPrefetcher().execute(task);
+    }
+}
+
+// prefetched level, or null if generating it failed
+private static Level await(final FutureTask<Level> prefetched)
+{
+    boolean interrupted = false;
+    try
+    {
+        while (true)
+        {
+            try
+            {
+                return prefetched.get();
+            } catch (InterruptedException e)
+            {
+                interrupted = true;
+            } catch (ExecutionException e)
+            {
+                return null;
+            }
+        }
+    } finally
+    {
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
+
+private ExecutorService getPrefetcher()
+{
+    if (prefetcher == null)
+    {
+        // leave one core to the episode being played; daemon threads do not keep the JVM alive
+        prefetcher = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new ThreadFactory()
+                {
+                    public Thread newThread(final Runnable r)
+                    {
+                        final Thread thread = new Thread(r, "level prefetcher");
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+    }
+    return prefetcher;
+}
+
+private synchronized void put(final String key, final Level level)
+{
+    final int size = level.length * level.height;
+    if (size > maxCells || levels.containsKey(key))
+        return;
+    levels.put(key, level);
+    cells += size;
+    evict();
+}
+
+private void evict()
+{
+    final Iterator<Map.Entry<String, Level>> eldest = levels.entrySet().iterator();
+    while (cells > maxCells && eldest.hasNext())
+    {
+        final Level level = eldest.next().getValue();
+        cells -= level.length * level.height;
+        eldest.remove();
+    }
+}
+
+/**
+ * @return the options that generation depends on, or null for a level loaded from a file
+ */
+static String getKey(final MarioAIOptions args)
+{
+    final int seed;
+    try
+    {
+        seed = args.getLevelRandSeed();
+    } catch (Exception e)
+    {
+        return null;
+    }
+    final StringBuilder key = new StringBuilder(64);
+    key.append(seed).append(' ').append(args.getLevelType())
+            .append(' ').append(args.getLevelDifficulty())
+            .append(' ').append(args.getLevelLength())
+            .append(' ').append(args.getLevelHeight())
+            .append(' ').append(args.getExitX())
+            .append(' ').append(args.getExitY())
+            .append(' ').append(args.isFlatLevel() ? 'f' : '-')
+            .append(args.isLevelLadder() ? 'l' : '-')
+            .append(args.getHillStraightCount() ? 'h' : '-')
+            .append(args.getCannonsCount() ? 'c' : '-')
+            .append(args.getGapsCount() ? 'g' : '-')
+            .append(args.getDeadEndsCount() ? 'd' : '-')
+            .append(args.getBlocksCount() ? 'b' : '-')
+            .append(args.getHiddenBlocksCount() ? 'i' : '-')
+            .append(args.getCoinsCount() ? 'o' : '-')
+            .append(args.getTubesCount() ? 't' : '-')
+            .append(' ').append(args.getEnemies());
+    return key.toString();
+}
+
+public synchronized void setMaxCells(final int maxCells)
+{
+    if (maxCells < 0)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : level cache size must not be negative: " + maxCells);
+    this.maxCells = maxCells;
+    evict();
+}
+
+public synchronized int getMaxCells()
+{
+    return maxCells;
+}
+
+public synchronized void clear()
+{
+    levels.clear();
+    cells = 0;
+}
+
+public synchronized int size()
+{
+    return levels.size();
+}
+
+public synchronized long getHitCount()
+{
+    return hits;
+}
+
+public synchronized long getMissCount()
+{
+    return misses;
+}
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Versioned binary level format for level files and replays, in place of Java object serialization of
+ * {@link Level}. All numbers are big-endian; varints are unsigned LEB128.
+ * <pre>
+ * int MAGIC, short VERSION, short flags
+ * int length, height, randomSeed, type, difficulty, xExit, yExit
+ * int n, then n ints: the level counters in the order of {@link #getCounters}
+ * block types: runs of (varint count, byte value) over the cells x * height + y, down column after column
+ * block data: runs as for the block types
+ * int n, then n sprite templates (varint cell - previous cell - 1, byte type), in ascending cell order
+ * with FLAG_TRACE: int n, then n visited trace cells (varint cell - previous cell - 1, varint visits)
+ * </pre>
+ * Only what the generator determines is stored: sprite templates come back as never spawned. Decoding
+ * reads the buffer in place, so a file is decoded straight from its memory mapping.
+ */
+public final class LevelCodec
+{
+public static final int MAGIC = 0x4d4c564c; // "MLVL"
+public static final int VERSION = 1;
+public static final int FLAG_TRACE = 1;
+/**
+ * Most cells a decoded level may have, counting the trace row below it: far more than generated levels have,
+ * few enough that a corrupt size cannot exhaust the memory.
+ */
+public static final int MAX_CELLS = 1 << 22;
+
+private static final int HEADER_INTS = 7;
+
+private LevelCodec() {}
+
+/**
+ * @param withTrace whether to store the Mario trace, which is empty for a level that has not been played
+ */
+public static byte[] encode(final Level level, final boolean withTrace)
+{
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + level.length * 8);
+    final DataOutputStream out = new DataOutputStream(bytes);
+    try
+    {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(withTrace ? FLAG_TRACE : 0);
+        out.writeInt(level.length);
+        out.writeInt(level.height);
+        out.writeInt(level.randomSeed);
+        out.writeInt(level.type);
+        out.writeInt(level.difficulty);
+        out.writeInt(level.xExit);
+        out.writeInt(level.yExit);
+
+        final int[] counters = level.counters == null ? new int[0] : getCounters(level.counters);
+        out.writeInt(counters.length);
+        for (int counter : counters)
+            out.writeInt(counter);
+
+        writeRuns(out, level.getBlocks());
+        writeRuns(out, level.getBlockDataArray());
+
+        int templates = 0;
+        for (int x = 0; x < level.length; x++)
+            for (int y = 0; y < level.height; y++)
+                if (level.getSpriteTemplate(x, y) != null)
+                    templates++;
+        out.writeInt(templates);
+        for (int x = 0, previous = -1; x < level.length; x++)
+            for (int y = 0; y < level.height; y++)
+            {
+                final SpriteTemplate template = level.getSpriteTemplate(x, y);
+                if (template != null)
+                {
+                    final int cell = x * level.height + y;
+                    writeVarint(out, cell - previous - 1);
+                    out.writeByte(template.getType());
+                    previous = cell;
+                }
+            }
+
+        if (withTrace)
+        {
+            final int[] trace = level.getTraceArray();
+            int visited = 0;
+            for (int visits : trace)
+                if (visits != 0)
+                    visited++;
+            out.writeInt(visited);
+            for (int cell = 0, previous = -1; cell < trace.length; cell++)
+                if (trace[cell] != 0)
+                {
+                    writeVarint(out, cell - previous - 1);
+                    writeVarint(out, trace[cell]);
+                    previous = cell;
+                }
+        }
+        out.flush();
+    } catch (IOException e)
+    {
+        // a ByteArrayOutputStream does not fail
+        throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+}
+
+public static void write(final Level level, final OutputStream out, final boolean withTrace) throws IOException
+{
+    out.write(encode(level, withTrace));
+}
+
+public static void write(final Level level, final File file, final boolean withTrace) throws IOException
+{
+    final OutputStream out = new FileOutputStream(file);
+    try
+    {
+        write(level, out, withTrace);
+    } finally
+    {
+        out.close();
+    }
+}
+
+/**
+ * @return whether the buffer holds an encoded level from its position on; the position is not changed
+ */
+public static boolean isEncoded(final ByteBuffer buffer)
+{
+    return buffer.remaining() >= 4 && buffer.getInt(buffer.position()) == MAGIC;
+}
+
+/**
+ * Decodes a level from the position of the buffer on, leaving the position after it.
+ *
+ * @throws IllegalArgumentException if the buffer does not hold a level of a known version, or holds a truncated
+ *                                  or malformed one, e.g. of more than {@link #MAX_CELLS} cells
+ */
+public static Level decode(final ByteBuffer buffer)
+{
+    try
+    {
+        if (buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException("[Mario AI EXCEPTION] : not an encoded level");
+        final int version = buffer.getShort();
+        if (version != VERSION)
+            throw new IllegalArgumentException("[Mario AI EXCEPTION] : unsupported level format version " + version);
+        final int flags = buffer.getShort();
+
+        final int[] header = new int[HEADER_INTS];
+        for (int i = 0; i < HEADER_INTS; i++)
+            header[i] = buffer.getInt();
+        if (header[0] <= 0 || header[1] <= 0 || (long) header[0] * (header[1] + 1L) > MAX_CELLS)
+            throw new IllegalArgumentException("[Mario AI EXCEPTION] : malformed level size " + header[0] + "x" + header[1]);
+        final Level level = new Level(header[0], header[1]);
+        level.randomSeed = header[2];
+        level.type = header[3];
+        level.difficulty = header[4];
+        level.xExit = header[5];
+        level.yExit = header[6];
+
+        final int[] counters = new int[readCount(buffer, 4, "counters")];
+        for (int i = 0; i < counters.length; i++)
+            counters[i] = buffer.getInt();
+        level.counters = new Level.objCounters();
+        setCounters(level.counters, counters);
+
+        readRuns(buffer, level.getBlocks());
+        readRuns(buffer, level.getBlockDataArray());
+
+        final int cells = level.length * level.height;
+        for (int n = readCount(buffer, 2, "sprite templates"), i = 0, cell = -1; i < n; i++)
+        {
+            cell = nextCell(buffer, cell);
+            final byte type = buffer.get();
+            if (cell >= cells)
+                throw new IllegalArgumentException("[Mario AI EXCEPTION] : sprite template outside the level");
+            level.setSpriteTemplate(cell / level.height, cell % level.height, new SpriteTemplate(type));
+        }
+
+        if ((flags & FLAG_TRACE) != 0)
+        {
+            final int[] trace = level.getTraceArray();
+            for (int n = readCount(buffer, 2, "trace cells"), i = 0, cell = -1; i < n; i++)
+            {
+                cell = nextCell(buffer, cell);
+                if (cell >= trace.length)
+                    throw new IllegalArgumentException("[Mario AI EXCEPTION] : trace cell outside the level");
+                trace[cell] = readVarint(buffer);
+            }
+        }
+        return level;
+    } catch (BufferUnderflowException e)
+    {
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : truncated level data");
+    }
+}
+
+/**
+ * Reads a level file, decoding it from a read-only memory mapping. Files written by {@link Level#save}
+ * are deserialized instead.
+ */
+public static Level read(final File file) throws IOException
+{
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+        final FileChannel channel = raf.getChannel();
+        final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (isEncoded(mapped))
+            return decode(mapped);
+    } finally
+    {
+        raf.close();
+    }
+    return readSerialized(new BufferedInputStream(new FileInputStream(file)));
+}
+
+/**
+ * Reads a level from the rest of the stream, in either format.
+ */
+public static Level read(final InputStream in) throws IOException
+{
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final byte[] chunk = new byte[8192];
+    for (int n; (n = in.read(chunk)) > 0; )
+        bytes.write(chunk, 0, n);
+    final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+    if (isEncoded(buffer))
+        return decode(buffer);
+    return readSerialized(new ByteArrayInputStream(buffer.array()));
+}
+
+private static Level readSerialized(final InputStream in) throws IOException
+{
+    try
+    {
+        return Level.load(new ObjectInputStream(in));
+    } catch (ClassNotFoundException e)
+    {
+        throw new IOException("[Mario AI EXCEPTION] : class not found in serialized level: " + e.getMessage());
+    } finally
+    {
+        in.close();
+    }
+}
+
+/**
+ * @return the counters in the order they are stored in
+ */
+static int[] getCounters(final Level.objCounters c)
+{
+    return new int[]{c.deadEndsCount, c.cannonsCount, c.hillStraightCount, c.tubesCount, c.blocksCount,
+            c.coinsCount, c.gapsCount, c.hiddenBlocksCount, c.totalCannons, c.totalGaps, c.totalDeadEnds,
+            c.totalBlocks, c.totalHiddenBlocks, c.totalCoins, c.totalHillStraight, c.totalTubes, c.totalPowerUps,
+            c.mushrooms, c.flowers, c.creatures, c.greenMushrooms};
+}
+
+/**
+ * Sets the counters from values in the order of {@link #getCounters}; missing ones stay 0, extra ones
+ * are ignored.
+ */
+static void setCounters(final Level.objCounters c, final int[] values)
+{
+    final int[] v = Arrays.copyOf(values, 21);
+    c.deadEndsCount = v[0];
+    c.cannonsCount = v[1];
+    c.hillStraightCount = v[2];
+    c.tubesCount = v[3];
+    c.blocksCount = v[4];
+    c.coinsCount = v[5];
+    c.gapsCount = v[6];
+    c.hiddenBlocksCount = v[7];
+    c.totalCannons = v[8];
+    c.totalGaps = v[9];
+    c.totalDeadEnds = v[10];
+    c.totalBlocks = v[11];
+    c.totalHiddenBlocks = v[12];
+    c.totalCoins = v[13];
+    c.totalHillStraight = v[14];
+    c.totalTubes = v[15];
+    c.totalPowerUps = v[16];
+    c.mushrooms = v[17];
+    c.flowers = v[18];
+    c.creatures = v[19];
+    c.greenMushrooms = v[20];
+}
+
+private static void writeRuns(final DataOutputStream out, final byte[] cells) throws IOException
+{
+    for (int i = 0; i < cells.length; )
+    {
+        int j = i + 1;
+        while (j < cells.length && cells[j] == cells[i])
+            j++;
+        writeVarint(out, j - i);
+        out.writeByte(cells[i]);
+        i = j;
+    }
+}
+
+private static void readRuns(final ByteBuffer in, final byte[] cells)
+{
+    for (int i = 0; i < cells.length; )
+    {
+        final int count = readVarint(in);
+        if (count <= 0 || count > cells.length - i)
+            throw new IllegalArgumentException("[Mario AI EXCEPTION] : malformed run of " + count + " cells");
+        final byte value = in.get();
+        Arrays.fill(cells, i, i + count, value);
+        i += count;
+    }
+}
+
+/**
+ * Reads the number of entries of a list, each of which takes at least entrySize bytes.
+ */
+private static int readCount(final ByteBuffer in, final int entrySize, final String what)
+{
+    final int n = in.getInt();
+    if (n < 0 || n > in.remaining() / entrySize)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : malformed number of " + what + " " + n);
+    return n;
+}
+
+/**
+ * Reads the distance to the next cell of an ascending list, see {@link #encode}.
+ */
+private static int nextCell(final ByteBuffer in, final int previous)
+{
+    final int gap = readVarint(in);
+    if (gap < 0 || gap > MAX_CELLS)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : malformed cell distance " + gap);
+    return previous + gap + 1;
+}
+
+private static void writeVarint(final DataOutputStream out, int value) throws IOException
+{
+    while ((value & ~0x7f) != 0)
+    {
+        out.writeByte((value & 0x7f) | 0x80);
+        value >>>= 7;
+    }
+    out.writeByte(value);
+}
+
+private static int readVarint(final ByteBuffer in)
+{
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7)
+    {
+        final byte b = in.get();
+        value |= (b & 0x7f) << shift;
+        if (b >= 0)
+            return value;
+    }
+    throw new IllegalArgumentException("[Mario AI EXCEPTION] : malformed varint");
+}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import ch.idsia.tools.MarioAIOptions;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encodes and decodes levels, and checks that truncated or corrupt level data is rejected with an
+ * IllegalArgumentException rather than any other failure.
+ */
+public class LevelCodecTest
+{
+// byte offsets in the encoding of an empty level without counters, see encodeEmptyLevel: after the counters
+// come a run of empty blocks and a run of empty block data, 2 bytes each for fewer than 128 cells
+private static final int LENGTH = 8;
+private static final int HEIGHT = 12;
+private static final int COUNTERS = 36;
+private static final int TEMPLATES = 44;
+private static final int TRACE = 48;
+
+private static Level createLevel(final int i)
+{
+    final Level level = LevelGenerator.createLevel(new MarioAIOptions("-ls " + i + " -ld " + i % 11 + " -lt " + i % 3
+            + " -ll " + (50 + i * 37) + " -lh " + (15 + i % 5) + " -vis off"));
+    level.setBlockData(3, 4, (byte) 3);
+    for (int v = 0; v < i; v++)
+        level.addMarioTrace(v % level.length, v * 7 % (level.height + 1));
+    level.counters.mushrooms = i;
+    return level;
+}
+
+private static byte[] encodeEmptyLevel()
+{
+    return LevelCodec.encode(new Level(8, 15), true);
+}
+
+private static void assertRejected(final String message, final byte[] bytes)
+{
+    try
+    {
+        LevelCodec.decode(ByteBuffer.wrap(bytes));
+        fail(message + " was decoded");
+    } catch (IllegalArgumentException expected)
+    {
+    }
+}
+
+@Test
+public void testRoundTrip()
+{
+    for (int i = 0; i < 40; i++)
+    {
+        final Level level = createLevel(i);
+        final byte[] encoded = LevelCodec.encode(level, true);
+        final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        final Level decoded = LevelCodec.decode(buffer);
+        assertEquals("level " + i, encoded.length, buffer.position());
+        assertArrayEquals("level " + i, level.getBlocks(), decoded.getBlocks());
+        assertArrayEquals("level " + i, level.getBlockDataArray(), decoded.getBlockDataArray());
+        assertArrayEquals("level " + i, level.getTraceArray(), decoded.getTraceArray());
+        assertArrayEquals("level " + i, LevelCodec.getCounters(level.counters), LevelCodec.getCounters(decoded.counters));
+        assertArrayEquals("level " + i, encoded, LevelCodec.encode(decoded, true));
+
+        final Level untraced = LevelCodec.decode(ByteBuffer.wrap(LevelCodec.encode(level, false)));
+        assertArrayEquals("level " + i, new int[level.getTraceArray().length], untraced.getTraceArray());
+    }
+}
+
+@Test
+public void testOversizedLevelIsRejected()
+{
+    final int[][] sizes = {{40000, 40000}, {50000, 50000}, {Integer.MAX_VALUE, 1}, {1, Integer.MAX_VALUE},
+            {LevelCodec.MAX_CELLS, 1}, {0, 15}, {256, -1}};
+    for (int[] size : sizes)
+    {
+        final ByteBuffer bytes = ByteBuffer.wrap(encodeEmptyLevel());
+        bytes.putInt(LENGTH, size[0]);
+        bytes.putInt(HEIGHT, size[1]);
+        assertRejected(size[0] + "x" + size[1], bytes.array());
+    }
+}
+
+@Test
+public void testMalformedCountsAreRejected()
+{
+    final byte[] empty = encodeEmptyLevel();
+    assertEquals(TRACE + 4, empty.length);
+    LevelCodec.decode(ByteBuffer.wrap(empty));
+    for (int offset : new int[]{COUNTERS, TEMPLATES, TRACE})
+        for (int count : new int[]{-1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1 << 28})
+        {
+            final ByteBuffer bytes = ByteBuffer.wrap(empty.clone());
+            assertEquals("count at " + offset, 0, bytes.getInt(offset));
+            bytes.putInt(offset, count);
+            assertRejected("count " + count + " at " + offset, bytes.array());
+        }
+}
+
+@Test
+public void testTruncatedLevelIsRejected()
+{
+    final byte[] encoded = LevelCodec.encode(createLevel(7), true);
+    for (int length = 0; length < encoded.length; length++)
+        assertRejected("prefix of " + length + " bytes", Arrays.copyOf(encoded, length));
+}
+
+@Test
+public void testCorruptLevelFailsOnlyWithIllegalArgumentException()
+{
+    final byte[] encoded = LevelCodec.encode(createLevel(5), true);
+    final Random random = new Random(5);
+    for (int i = 0; i < 5000; i++)
+    {
+        final byte[] corrupt = encoded.clone();
+        for (int flips = 1 + random.nextInt(4); flips > 0; flips--)
+        {
+            // the header, the counters and the lists are where sizes and counts are
+            final int at = random.nextBoolean() ? random.nextInt(Math.min(64, corrupt.length)) : random.nextInt(corrupt.length);
+            corrupt[at] = (byte) random.nextInt(256);
+        }
+        try
+        {
+            LevelCodec.decode(ByteBuffer.wrap(corrupt));
+        } catch (IllegalArgumentException expected)
+        {
+        }
+    }
+}
+}
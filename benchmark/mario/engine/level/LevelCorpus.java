@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import ch.idsia.tools.MarioAIOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A fixed set of levels generated ahead of time into one file, so that agents are evaluated on the same levels
+ * on every machine without running the generator. Levels are decoded by index straight from a read-only
+ * memory mapping of the file. All numbers are big-endian.
+ * <pre>
+ * int MAGIC, short VERSION, short 0
+ * int count, int firstSeed
+ * int n, then n bytes: the generator options without -ls, UTF-8
+ * long[count + 1]: file offsets; level i takes the bytes from offset i up to offset i + 1
+ * the levels, in the format of {@link LevelCodec}
+ * </pre>
+ * Level i is generated from the options with <code>-ls firstSeed + i</code>. It is named by
+ * <code>-ls file#i</code> wherever a level file may be given; each file is mapped once and then shared, so a
+ * corpus must not be rewritten while it is in use.
+ * <p/>
+ * Usage: <code>LevelCorpus file count [firstSeed [options...]]</code>
+ */
+public final class LevelCorpus
+{
+public static final int MAGIC = 0x4d4c5643; // "MLVC"
+public static final int VERSION = 1;
+
+private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+// corpora opened by load, by canonical path
+private static final Map<String, LevelCorpus> opened = new HashMap<String, LevelCorpus>();
+
+private final ByteBuffer mapped;
+private final int count;
+private final int firstSeed;
+private final String options;
+// position of the offset table
+private final int table;
+
+private LevelCorpus(final ByteBuffer mapped)
+{
+    this.mapped = mapped;
+    if (mapped.limit() < 4 || mapped.getInt(0) != MAGIC)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : not a level corpus");
+    if (mapped.limit() < 20)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : truncated level corpus header");
+    if (mapped.getShort(4) > VERSION)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : unsupported level corpus version " + mapped.getShort(4));
+    count = mapped.getInt(8);
+    firstSeed = mapped.getInt(12);
+    final int n = mapped.getInt(16);
+    if (n < 0 || 20L + n > mapped.limit())
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : truncated level corpus header");
+    final byte[] utf = new byte[n];
+    final ByteBuffer header = mapped.duplicate();
+    header.position(20);
+    header.get(utf);
+    options = new String(utf, UTF_8);
+    table = 20 + n;
+    if (count < 0 || table + 8L * (count + 1) > mapped.limit() || mapped.getLong(table + 8 * count) > mapped.limit())
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : truncated level corpus");
+}
+
+/**
+ * Maps the corpus file; the mapping stays valid after the file is closed.
+ */
+public static LevelCorpus open(final File file) throws IOException
+{
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try
+    {
+        final FileChannel channel = raf.getChannel();
+        if (channel.size() > Integer.MAX_VALUE)
+            throw new IOException("[Mario AI EXCEPTION] : level corpus " + file + " is larger than 2 GB");
+        return new LevelCorpus(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } finally
+    {
+        raf.close();
+    }
+}
+
+/**
+ * @return whether the name refers to a level in a corpus, as in <code>levels.mlc#12</code>
+ */
+public static boolean isReference(final String name)
+{
+    final int hash = name.lastIndexOf('#');
+    if (hash <= 0 || hash == name.length() - 1)
+        return false;
+    for (int i = hash + 1; i < name.length(); i++)
+        if (!Character.isDigit(name.charAt(i)))
+            return false;
+    return true;
+}
+
+/**
+ * Reads the level named by <code>file#index</code>, mapping the file on first use.
+ */
+public static Level load(final String reference) throws IOException
+{
+    final int hash = reference.lastIndexOf('#');
+    final File file = new File(reference.substring(0, hash)).getCanonicalFile();
+    LevelCorpus corpus;
+    synchronized (opened)
+    {
+        corpus = opened.get(file.getPath());
+        if (corpus == null)
+        {
+            corpus = open(file);
+            opened.put(file.getPath(), corpus);
+        }
+    }
+    return corpus.getLevel(Integer.parseInt(reference.substring(hash + 1)));
+}
+
+/**
+ * Decodes level <code>index</code>; every call returns a new level. Safe to call from several threads.
+ *
+ * @throws IllegalArgumentException if there is no such level, or its bytes are corrupt
+ */
+public Level getLevel(final int index)
+{
+    if (index < 0 || index >= count)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : no level " + index + " in a corpus of " + count);
+    final long start = mapped.getLong(table + 8 * index);
+    final long end = mapped.getLong(table + 8 * index + 8);
+    if (start < table + 8L * (count + 1) || start > end || end > mapped.limit())
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : corrupt level corpus: level " + index + " at bytes " + start + " to " + end);
+    final ByteBuffer level = mapped.duplicate();
+    level.limit((int) end);
+    level.position((int) start);
+    return LevelCodec.decode(level);
+}
+
+public int size()
+{
+    return count;
+}
+
+public int getFirstSeed()
+{
+    return firstSeed;
+}
+
+/**
+ * @return the options level <code>index</code> was generated from
+ */
+public String getOptions(final int index)
+{
+    return getOptions(options, firstSeed + index);
+}
+
+private static String getOptions(final String options, final int seed)
+{
+    return (options.length() == 0 ? "" : options + " ") + "-ls " + seed;
+}
+
+/**
+ * Generates <code>count</code> levels from the options with the seeds from <code>firstSeed</code> on and writes
+ * them to the file.
+ *
+ * @param options generator options without -ls
+ */
+public static void write(final File file, final String options, final int firstSeed, final int count) throws IOException
+{
+    if (count < 0)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : negative number of levels: " + count);
+    final byte[] utf = options.trim().getBytes(UTF_8);
+    final LevelGenerator generator = new LevelGenerator();
+    final long[] offsets = new long[count + 1];
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try
+    {
+        raf.setLength(0);
+        raf.writeInt(MAGIC);
+        raf.writeShort(VERSION);
+        raf.writeShort(0);
+        raf.writeInt(count);
+        raf.writeInt(firstSeed);
+        raf.writeInt(utf.length);
+        raf.write(utf);
+        final long table = raf.getFilePointer();
+        // the levels first, the offset table once they are known
+        raf.seek(table + 8L * (count + 1));
+        for (int i = 0; i < count; i++)
+        {
+            offsets[i] = raf.getFilePointer();
+            raf.write(LevelCodec.encode(generator.generate(new MarioAIOptions(getOptions(options.trim(), firstSeed + i))), false));
+        }
+        offsets[count] = raf.getFilePointer();
+        final ByteBuffer bytes = ByteBuffer.allocate(8 * (count + 1));
+        bytes.asLongBuffer().put(offsets);
+        raf.seek(table);
+        raf.write(bytes.array());
+    } finally
+    {
+        raf.close();
+    }
+}
+
+public static void main(String[] args) throws IOException
+{
+    if (args.length < 2)
+    {
+        System.err.println("Usage: LevelCorpus file count [firstSeed [options...]]");
+        return;
+    }
+    final StringBuilder options = new StringBuilder();
+    for (int i = 3; i < args.length; i++)
+        options.append(i > 3 ? " " : "").append(args[i]);
+    final int count = Integer.parseInt(args[1]);
+    final long start = System.currentTimeMillis();
+    write(new File(args[0]), options.toString(), args.length > 2 ? Integer.parseInt(args[2]) : 0, count);
+    System.out.println(count + " levels written to " + args[0] + " (" + new File(args[0]).length() + " bytes) in "
+            + (System.currentTimeMillis() - start) + " ms");
+}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import ch.idsia.tools.MarioAIOptions;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes a small corpus, checks that it gives back the generated levels, and that truncated or corrupt corpora,
+ * level payloads included, are rejected with an IllegalArgumentException rather than any other failure.
+ */
+public class LevelCorpusTest
+{
+private static final String OPTIONS = "-ld 2 -ll 64";
+private static final int FIRST_SEED = 5;
+private static final int LEVELS = 3;
+
+private static byte[] writeCorpus() throws IOException
+{
+    final File file = File.createTempFile("corpus", ".mlc");
+    try
+    {
+        LevelCorpus.write(file, OPTIONS, FIRST_SEED, LEVELS);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try
+        {
+            final byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally
+        {
+            raf.close();
+        }
+    } finally
+    {
+        file.delete();
+    }
+}
+
+/**
+ * Opens the bytes as corpus and decodes all of its levels; fails on anything but an IllegalArgumentException.
+ */
+private static void decodeAll(final File file, final byte[] bytes) throws IOException
+{
+    final FileOutputStream out = new FileOutputStream(file);
+    try
+    {
+        out.write(bytes);
+    } finally
+    {
+        out.close();
+    }
+    final LevelCorpus corpus;
+    try
+    {
+        corpus = LevelCorpus.open(file);
+    } catch (IllegalArgumentException expected)
+    {
+        return;
+    }
+    for (int i = 0; i < corpus.size(); i++)
+        try
+        {
+            corpus.getLevel(i);
+        } catch (IllegalArgumentException expected)
+        {
+        }
+}
+
+@Test
+public void testLevelsMatchGenerator() throws IOException
+{
+    final File file = File.createTempFile("corpus", ".mlc");
+    try
+    {
+        LevelCorpus.write(file, OPTIONS, FIRST_SEED, LEVELS);
+        final LevelCorpus corpus = LevelCorpus.open(file);
+        assertEquals(LEVELS, corpus.size());
+        for (int i = 0; i < LEVELS; i++)
+        {
+            final Level generated = LevelGenerator.createLevel(new MarioAIOptions(corpus.getOptions(i)));
+            assertArrayEquals(corpus.getOptions(i), generated.getBlocks(), corpus.getLevel(i).getBlocks());
+        }
+    } finally
+    {
+        file.delete();
+    }
+}
+
+@Test
+public void testCorruptCorpusFailsOnlyWithIllegalArgumentException() throws IOException
+{
+    final byte[] corpus = writeCorpus();
+    final File file = File.createTempFile("corrupt", ".mlc");
+    try
+    {
+        for (int length = 0; length < corpus.length; length++)
+            decodeAll(file, Arrays.copyOf(corpus, length));
+
+        final Random random = new Random(FIRST_SEED);
+        // bytes past the offset table belong to the level payloads
+        final int payloads = 20 + OPTIONS.length() + 8 * (LEVELS + 1);
+        for (int i = 0; i < 3000; i++)
+        {
+            final byte[] corrupt = corpus.clone();
+            for (int flips = 1 + random.nextInt(4); flips > 0; flips--)
+            {
+                final int at = i % 2 == 0 ? random.nextInt(payloads) : payloads + random.nextInt(corpus.length - payloads);
+                corrupt[at] = (byte) random.nextInt(256);
+            }
+            decodeAll(file, corrupt);
+        }
+    } finally
+    {
+        file.delete();
+    }
+}
+}
@@ -33,9 +33,8 @@ import ch.idsia.tools.MarioAIOptions;
 import ch.idsia.tools.RandomCreatureGenerator;
 import ch.idsia.utils.ErrorCodes;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Random;
 
 /**
@@ -66,16 +65,16 @@ public static final int TYPE_CASTLE = 2;
 public static final int DEFAULT_FLOOR = -1;
 
 public static final int LevelLengthMinThreshold = 50; // minimal length of the level. used in ToolsConfigurator
-private static boolean isFlatLevel;
+private boolean isFlatLevel;
 
-private static int length;
-private static int height;
-private static Level level;
+private int length;
+private int height;
+private Level level;
 
-private static Random globalRandom = new Random(0);
-private static Random ceilingRandom = new Random(0);
-private static RandomCreatureGenerator creaturesRandom = new RandomCreatureGenerator(0, "", 0);
-public static Random dxRnd = new Random(0); //used in addEnemy to compute dx
+private Random globalRandom = new Random(0);
+private Random ceilingRandom = new Random(0);
+private RandomCreatureGenerator creaturesRandom = new RandomCreatureGenerator(0, "", 0);
+private Random dxRnd = new Random(0); //used in addEnemy to compute dx
 
 private static final int ODDS_STRAIGHT = 0;
 private static final int ODDS_HILL_STRAIGHT = 1;
@@ -83,23 +82,38 @@ private static final int ODDS_TUBES = 2;
 private static final int ODDS_GAPS = 3;
 private static final int ODDS_CANNONS = 4;
 private static final int ODDS_DEAD_ENDS = 5;
-private static int[] odds = new int[6];
-private static int totalOdds;
-private static int levelDifficulty;
-private static int levelType;
-private static int levelSeed;
+private int[] odds = new int[6];
+private int totalOdds;
+private int levelDifficulty;
+private int levelType;
+private int levelSeed;
 
-private static boolean isLadder = false;
+private boolean isLadder = false;
 
 private static final int ANY_HEIGHT = -1;
+
+private static final byte GROUND = (byte) (1 + 9 * 16);
+// rows per band in fixWalls: a band and the rows above and below it fit into a long
+private static final int WALL_BAND = 62;
+// wall tile for the solid corners of a cell in fixWalls: bit 0 top left, 1 bottom left, 2 top right,
+// 3 bottom right; a cell without solid corners keeps its block
+private static final int[] WALL_TILES = {
+        -1, 2 + 10 * 16, 2 + 8 * 16, 2 + 9 * 16,
+        0 + 10 * 16, 1 + 10 * 16, 1 + 9 * 16, 3 + 10 * 16,
+        0 + 8 * 16, 1 + 9 * 16, 1 + 8 * 16, 3 + 9 * 16,
+        0 + 9 * 16, 3 + 11 * 16, 3 + 8 * 16, 1 + 9 * 16};
 private static final int INFINITE_FLOOR_HEIGHT = Integer.MAX_VALUE;
 
 //Level customization counters
-static Level.objCounters counters = new Level.objCounters();
+Level.objCounters counters = new Level.objCounters();
 
-private LevelGenerator() {}
+/**
+ * Creates a generator with its own random sources and scratch state. A generator builds one level at a time;
+ * threads that create levels concurrently use one generator each.
+ */
+public LevelGenerator() {}
 
-private static void loadLevel(String filePath)
+private void loadLevel(String filePath)
 {
     try
     {
@@ -109,21 +123,35 @@ private static void loadLevel(String filePath)
             System.exit(ErrorCodes.FILE_NAME_OR_LOAD_PROBLEM);
         }
 
-        level = Level.load(new ObjectInputStream(new FileInputStream(filePath)));
+        level = LevelCorpus.isReference(filePath) ? LevelCorpus.load(filePath) : LevelCodec.read(new File(filePath));
     } catch (IOException e)
     {
         System.err.println("[MarioAI EXCEPTION] : failed while trying to loadAgent " + filePath);
         System.exit(ErrorCodes.FILE_NAME_OR_LOAD_PROBLEM);
-    } catch (ClassNotFoundException e)
+    } catch (IllegalArgumentException e)
     {
-        System.err.println("[MarioAI EXCEPTION] : class not found in " + filePath);
+        System.err.println("[MarioAI EXCEPTION] : " + filePath + " is not a valid level file: " + e.getMessage());
         System.exit(ErrorCodes.FILE_NAME_OR_LOAD_PROBLEM);
     }
 }
 
+/**
+ * Builds a level with a fresh generator, so any number of threads may call it at the same time. The level
+ * depends on the options only.
+ */
 public static Level createLevel(MarioAIOptions args)
 {
-    // -ls option can also loadAgent level from file if filename instead of a number provided
+    return new LevelGenerator().generate(args);
+}
+
+/**
+ * Builds the level described by the options, reseeding this generator first. Calls on one generator must not
+ * overlap.
+ */
+public Level generate(MarioAIOptions args)
+{
+    // -ls option can also loadAgent level from file if filename instead of a number provided,
+    // or level N of a LevelCorpus as file#N
     levelType = args.getLevelType();
     try
     {
@@ -142,6 +170,8 @@ public static Level createLevel(MarioAIOptions args)
     }
     isFlatLevel = args.isFlatLevel();
 
+    // every level gets its own counters, they are updated during play
+    counters = new Level.objCounters();
     counters.reset(args);
     levelDifficulty = args.getLevelDifficulty();
     odds[ODDS_STRAIGHT] = 20;
@@ -251,7 +281,7 @@ public static Level createLevel(MarioAIOptions args)
     return level;
 }
 
-private static void setPrincess(int x, int y)
+private void setPrincess(int x, int y)
 {
 //    System.out.println("x = " + x);
 //    System.out.println("y = " + y);
@@ -259,7 +289,7 @@ private static void setPrincess(int x, int y)
     level.setBlock(x, y, (byte) (15 + 15 * 16));
 }
 
-private static int buildZone(int x, int maxLength, int maxHeight, int floor, int floorHeight)
+private int buildZone(int x, int maxLength, int maxHeight, int floor, int floorHeight)
 {
 //    System.out.println("buildZone maxLength = " + maxLength);
     int t = globalRandom.nextInt(totalOdds);
@@ -341,7 +371,7 @@ private static int buildZone(int x, int maxLength, int maxHeight, int floor, int
     return length;
 }
 
-private static void buildCeiling(int x0, int length)
+private void buildCeiling(int x0, int length)
 {
     int maxCeilingHeight = 3;
     int ceilingLength = length;
@@ -382,7 +412,7 @@ private static void buildCeiling(int x0, int length)
     }
 }
 
-private static void addEnemy(int x, int y)
+private void addEnemy(int x, int y)
 {
     if (!creaturesRandom.canAdd())
         return;
@@ -401,7 +431,7 @@ private static void addEnemy(int x, int y)
 //x0 - first block to start from
 //maxLength - maximal length of the zone
 
-private static int buildDeadEnds(int x0, int maxLength)
+private int buildDeadEnds(int x0, int maxLength)
 {
     //first of all build pre dead end zone
     int floor = height - 2 - globalRandom.nextInt(2);  //floor of pre dead end zone
@@ -498,7 +528,7 @@ private static int buildDeadEnds(int x0, int maxLength)
     return length + tLength;
 }
 
-private static void buildLadder(int x0, int floor, int maxHeight)
+private void buildLadder(int x0, int floor, int maxHeight)
 {
     int ladderHeight = globalRandom.nextInt(height);
     if (ladderHeight > maxHeight && maxHeight != ANY_HEIGHT)
@@ -515,7 +545,7 @@ private static void buildLadder(int x0, int floor, int maxHeight)
     level.setBlock(x0, floor - ladderHeight, (byte) (13 + 5 * 16));
 }
 
-private static int buildGap(int xo, int maxLength, int maxHeight, int vfloor, int floorHeight)
+private int buildGap(int xo, int maxLength, int maxHeight, int vfloor, int floorHeight)
 {
     int gs = globalRandom.nextInt(5) + 2; //GapStairs
     int gl = globalRandom.nextInt(levelDifficulty) + levelDifficulty > 7 ? 10 : 3;//globalRandom.nextInt(2) + 2; //GapLength
@@ -584,7 +614,7 @@ private static int buildGap(int xo, int maxLength, int maxHeight, int vfloor, in
     return length;
 }
 
-private static int buildCannons(int xo, int maxLength, int maxHeight, int vfloor, int floorHeight)
+private int buildCannons(int xo, int maxLength, int maxHeight, int vfloor, int floorHeight)
 {
     int maxCannonHeight = 0;
     int length = globalRandom.nextInt(10) + 2;
@@ -673,7 +703,7 @@ private static int buildCannons(int xo, int maxLength, int maxHeight, int vfloor
     return length;
 }
 
-private static int buildHill(int x0, boolean withStraight, int maxLength, int vfloor, boolean isInGap)
+private int buildHill(int x0, boolean withStraight, int maxLength, int vfloor, boolean isInGap)
 {
     int length = globalRandom.nextInt(10) + 10;
     if (length > maxLength)
@@ -750,7 +780,7 @@ private static int buildHill(int x0, boolean withStraight, int maxLength, int vf
     return length;
 }
 
-private static int buildTubes(int xo, int maxLength, int maxHeight, int vfloor, int floorHeight)
+private int buildTubes(int xo, int maxLength, int maxHeight, int vfloor, int floorHeight)
 {
     int maxTubeHeight = 0;
     int length = globalRandom.nextInt(10) + 5;
@@ -860,7 +890,7 @@ private static int buildTubes(int xo, int maxLength, int maxHeight, int vfloor,
 // minimal length = 2
 //floorHeight - height of the floor. used for building of the top part of the dead end separator
 
-private static int buildStraight(int xo, int maxLength, boolean safe, int vfloor, int floorHeight)
+private int buildStraight(int xo, int maxLength, boolean safe, int vfloor, int floorHeight)
 {
     int length;
     if (floorHeight != INFINITE_FLOOR_HEIGHT)
@@ -905,7 +935,7 @@ private static int buildStraight(int xo, int maxLength, boolean safe, int vfloor
     return length;
 }
 
-private static boolean canBuildBlocks(int x0, int floor, boolean isHB)
+private boolean canBuildBlocks(int x0, int floor, boolean isHB)
 {
     if ((counters.blocksCount >= counters.totalBlocks && !isHB))
     {
@@ -931,7 +961,7 @@ private static boolean canBuildBlocks(int x0, int floor, boolean isHB)
     return res;
 }
 
-private static boolean buildBlocks(int x0, int x1, int floor, boolean pHB, int pS, int pE, boolean onlyHB, boolean isDistance)
+private boolean buildBlocks(int x0, int x1, int floor, boolean pHB, int pS, int pE, boolean onlyHB, boolean isDistance)
 {
     boolean result = false;
     if (counters.blocksCount > counters.totalBlocks)
@@ -1049,7 +1079,7 @@ private static boolean buildBlocks(int x0, int x1, int floor, boolean pHB, int p
     return result;
 }
 
-private static void buildCoins(int x0, int x1, int floor, int s, int e)
+private void buildCoins(int x0, int x1, int floor, int s, int e)
 {
     if (floor - 2 < 0) return;
     //if (!isFlatLevel)
@@ -1070,7 +1100,7 @@ private static void buildCoins(int x0, int x1, int floor, int s, int e)
     }
 }
 
-private static void decorate(int x0, int x1, int floor)
+private void decorate(int x0, int x1, int floor)
 {
     if (floor < 1) return;
 
@@ -1094,133 +1124,52 @@ private static void decorate(int x0, int x1, int floor)
         buildLadder(globalRandom.nextBoolean() ? x0 : x1, floor, ANY_HEIGHT);
 }
 
-private static void fixWalls()
+/**
+ * Replaces ground by the wall tiles of its outline. A corner between columns x - 1 and x and rows y - 1 and y
+ * is solid when the four cells around it are ground, cells beyond the edges repeating the edge; every cell then
+ * takes the tile of its four corners from WALL_TILES. Columns are packed into bit masks of WALL_BAND rows, so
+ * the corners of a band of a column take a few shifts, and cells without solid corners are skipped.
+ */
+private void fixWalls()
 {
-    boolean[][] blockMap = new boolean[length + 1][height + 1];
-    for (int x = 0; x < length + 1; x++)
+    final int to = levelType == TYPE_CASTLE ? 4 * 2 : levelType == TYPE_UNDERGROUND ? 4 * 3 : 0;
+    final byte[] blocks = level.getBlocks();
+    final int bands = (height + WALL_BAND - 1) / WALL_BAND;
+
+    // bit k of pairs[band * length + x]: cells (x, y0 - 2 + k) and (x, y0 - 1 + k) are both ground, with
+    // y0 = band * WALL_BAND and rows clamped to the level; all of them are read before any block is replaced
+    final long[] pairs = new long[bands * length];
+    for (int band = 0; band < bands; band++)
     {
-        for (int y = 0; y < height + 1; y++)
+        final int y0 = band * WALL_BAND;
+        final int rows = Math.min(WALL_BAND, height - y0);
+        for (int x = 0; x < length; x++)
         {
-            int blocks = 0;
-            for (int xx = x - 1; xx < x + 1; xx++)
-            {
-                for (int yy = y - 1; yy < y + 1; yy++)
-                {
-                    if (level.getBlockCapped(xx, yy) == (byte) (1 + 9 * 16)) blocks++;
-                }
-            }
-            blockMap[x][y] = blocks == 4;
+            long ground = 0;
+            for (int k = 0; k < rows + 2; k++)
+                if (blocks[x * height + Math.min(Math.max(y0 - 1 + k, 0), height - 1)] == GROUND)
+                    ground |= 1L << k;
+            pairs[band * length + x] = ground & ground << 1;
         }
     }
-    blockify(level, blockMap, length + 1, height + 1);
-}
 
-private static void blockify(Level level, boolean[][] blocks, int width, int height)
-{
-    int to = 0;
-    if (levelType == LevelGenerator.TYPE_CASTLE)
-        to = 4 * 2;
-    else if (levelType == LevelGenerator.TYPE_UNDERGROUND)
-        to = 4 * 3;
-
-    boolean[][] b = new boolean[2][2];
-    for (int x = 0; x < width; x++)
+    for (int band = 0; band < bands; band++)
     {
-        for (int y = 0; y < height; y++)
+        final int y0 = band * WALL_BAND;
+        final int rows = Math.min(WALL_BAND, height - y0);
+        final int first = band * length;
+        // bit j of left and right: the corner at row y0 + j in column x and x + 1 is solid
+        long left = pairs[first] >>> 1;
+        for (int x = 0; x < length; x++)
         {
-            for (int xx = x; xx <= x + 1; xx++)
-            {
-                for (int yy = y; yy <= y + 1; yy++)
-                {
-                    int _xx = xx;
-                    int _yy = yy;
-                    if (_xx < 0) _xx = 0;
-                    if (_yy < 0) _yy = 0;
-                    if (_xx > width - 1) _xx = width - 1;
-                    if (_yy > height - 1) _yy = height - 1;
-                    b[xx - x][yy - y] = blocks[_xx][_yy];
-                }
-            }
-
-            if (b[0][0] == b[1][0] && b[0][1] == b[1][1])
-            {
-                if (b[0][0] == b[0][1])
-                {
-                    if (b[0][0])
-                    {
-                        level.setBlock(x, y, (byte) (1 + 9 * 16 + to));
-                    } else
-                    {
-                        // KEEP OLD BLOCK!
-                    }
-                } else
-                {
-                    if (b[0][0])
-                    {
-                        level.setBlock(x, y, (byte) (1 + 10 * 16 + to));
-                    } else
-                    {
-                        level.setBlock(x, y, (byte) (1 + 8 * 16 + to));
-                    }
-                }
-            } else if (b[0][0] == b[0][1] && b[1][0] == b[1][1])
-            {
-                if (b[0][0])
-                {
-                    level.setBlock(x, y, (byte) (2 + 9 * 16 + to));
-                } else
-                {
-                    level.setBlock(x, y, (byte) (0 + 9 * 16 + to));
-                }
-            } else if (b[0][0] == b[1][1] && b[0][1] == b[1][0])
-            {
-                level.setBlock(x, y, (byte) (1 + 9 * 16 + to));
-            } else if (b[0][0] == b[1][0])
-            {
-                if (b[0][0])
-                {
-                    if (b[0][1])
-                    {
-                        level.setBlock(x, y, (byte) (3 + 10 * 16 + to));
-                    } else
-                    {
-                        level.setBlock(x, y, (byte) (3 + 11 * 16 + to));
-                    }
-                } else
-                {
-                    if (b[0][1])
-                    {
-                        level.setBlock(x, y, (byte) (2 + 8 * 16 + to));
-                    } else
-                    {
-                        level.setBlock(x, y, (byte) (0 + 8 * 16 + to));
-                    }
-                }
-            } else if (b[0][1] == b[1][1])
-            {
-                if (b[0][1])
-                {
-                    if (b[0][0])
-                    {
-                        level.setBlock(x, y, (byte) (3 + 9 * 16 + to));
-                    } else
-                    {
-                        level.setBlock(x, y, (byte) (3 + 8 * 16 + to));
-                    }
-                } else
-                {
-                    if (b[0][0])
-                    {
-                        level.setBlock(x, y, (byte) (2 + 10 * 16 + to));
-                    } else
-                    {
-                        level.setBlock(x, y, (byte) (0 + 10 * 16 + to));
-                    }
-                }
-            } else
+            final long right = (pairs[first + x] & pairs[first + Math.min(x + 1, length - 1)]) >>> 1;
+            for (long cells = (left | left >>> 1 | right | right >>> 1) & ((1L << rows) - 1); cells != 0; cells &= cells - 1)
             {
-                level.setBlock(x, y, (byte) (0 + 1 * 16 + to));
+                final int j = Long.numberOfTrailingZeros(cells);
+                final int corners = (int) ((left >>> j & 3) | (right >>> j & 3) << 2);
+                level.setBlock(x, y0 + j, (byte) (WALL_TILES[corners] + to));
             }
+            left = right;
         }
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import ch.idsia.tools.MarioAIOptions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Generates levels on several threads at once and checks that every level matches the one a single thread
+ * builds from the same options, and that generated levels have not changed.
+ */
+public class LevelGeneratorTest
+{
+private static final int LEVELS = 2000;
+private static final int THREADS = 8;
+
+// CRC32 of the blocks of the levels of goldenOptions(i), for i modulo 3, as generated by the per-cell
+// wall pass that fixWalls replaced
+private static final long[] GOLDEN = {0x8a6ebb68L, 0x62f4402bL, 0xcc0ab892L};
+private static final int GOLDEN_LEVELS = 3000;
+
+private static String options(final int i)
+{
+    return "-ll " + (50 + i % 7 * 40) + " -ls " + i + " -ld " + i % 11 + " -lt " + i % 3
+            + (i % 5 == 0 ? " -lf on" : "") + (i % 13 == 0 ? " -lla on" : "") + " -vis off";
+}
+
+// heights of 70 and 130 take the wall pass through more than one band of rows
+private static String goldenOptions(final int i)
+{
+    return "-ll " + (50 + i % 9 * 45) + " -ls " + i + " -ld " + i % 12 + " -lt " + i % 3
+            + (i % 17 == 0 ? " -lh 70" : i % 19 == 0 ? " -lh 130" : i % 4 == 0 ? " -lh " + (15 + i % 7) : "")
+            + (i % 5 == 0 ? " -lf on" : "") + (i % 13 == 0 ? " -lla on" : "");
+}
+
+private static long hash(final Level level)
+{
+    final CRC32 crc = new CRC32();
+    crc.update(LevelCodec.encode(level, false));
+    return crc.getValue();
+}
+
+private static long[] generateSequentially()
+{
+    final long[] hashes = new long[LEVELS];
+    for (int i = 0; i < LEVELS; i++)
+        hashes[i] = hash(LevelGenerator.createLevel(new MarioAIOptions(options(i))));
+    return hashes;
+}
+
+@Test
+public void testSameOptionsGiveSameLevel()
+{
+    final LevelGenerator generator = new LevelGenerator();
+    for (int i = 0; i < 50; i++)
+    {
+        final long expected = hash(LevelGenerator.createLevel(new MarioAIOptions(options(i))));
+        assertEquals(options(i), expected, hash(generator.generate(new MarioAIOptions(options(i)))));
+        // a reused generator must not carry anything over from the previous level
+        generator.generate(new MarioAIOptions(options(i + 1)));
+        assertEquals(options(i), expected, hash(generator.generate(new MarioAIOptions(options(i)))));
+    }
+}
+
+@Test
+public void testLevelsMatchGoldenHashes()
+{
+    final CRC32[] crcs = {new CRC32(), new CRC32(), new CRC32()};
+    final LevelGenerator generator = new LevelGenerator();
+    for (int i = 0; i < GOLDEN_LEVELS; i++)
+        crcs[i % 3].update(generator.generate(new MarioAIOptions(goldenOptions(i))).getBlocks());
+    for (int i = 0; i < GOLDEN.length; i++)
+        assertEquals("levels " + i + " modulo 3", GOLDEN[i], crcs[i].getValue());
+}
+
+@Test
+public void testConcurrentGenerationMatchesSequential() throws Exception
+{
+    final long[] expected = generateSequentially();
+
+    final long[] hashes = new long[LEVELS];
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try
+    {
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Object>()
+            {
+                public Object call()
+                {
+                    // half of the threads reuse one generator, the others go through the static entry point
+                    final LevelGenerator generator = thread % 2 == 0 ? new LevelGenerator() : null;
+                    for (int i = thread; i < LEVELS; i += THREADS)
+                    {
+                        final MarioAIOptions args = new MarioAIOptions(options(i));
+                        hashes[i] = hash(generator != null ? generator.generate(args) : LevelGenerator.createLevel(args));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+    } finally
+    {
+        executor.shutdown();
+    }
+
+    for (int i = 0; i < LEVELS; i++)
+        assertEquals(options(i), expected[i], hashes[i]);
+}
+}
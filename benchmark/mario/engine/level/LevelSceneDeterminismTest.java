@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.engine.level;
+
+import ch.idsia.benchmark.mario.engine.LevelScene;
+import ch.idsia.benchmark.mario.engine.sprites.Mario;
+import ch.idsia.benchmark.mario.engine.sprites.Sprite;
+import ch.idsia.tools.MarioAIOptions;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays worlds with many enemies, cannons and effects from the same options and action stream, one after the
+ * other and on several threads at once, and checks that every tick of every run ends in the same state.
+ */
+public class LevelSceneDeterminismTest
+{
+private static final int WORLDS = 16;
+private static final int THREADS = 8;
+private static final int TICKS = 1500;
+
+// difficulties above 4 have winged enemies, spikies and cannons; an invulnerable Mario in a level without gaps
+// plays all of the ticks
+private static String options(final int i)
+{
+    return "-ls " + (100 + i) + " -ld " + (5 + i % 8) + " -lt " + i % 3 + " -mm " + i % 3 + " -i on -lg off -vis off";
+}
+
+/**
+ * @return per tick, a hash of Mario, of every sprite and of the blocks
+ */
+private static long[] play(final int i)
+{
+    final LevelScene scene = new LevelScene();
+    scene.reset(new MarioAIOptions(options(i)));
+    final Random actions = new Random(i);
+    final boolean[] action = new boolean[6];
+    final long[] hashes = new long[TICKS];
+    final CRC32 crc = new CRC32();
+    for (int t = 0; t < TICKS && scene.mario.getStatus() == Mario.STATUS_RUNNING; t++)
+    {
+        action[Mario.KEY_LEFT] = actions.nextInt(6) == 0;
+        action[Mario.KEY_RIGHT] = actions.nextInt(4) > 0;
+        // jumps held long enough to clear gaps
+        if (t % 8 == 0)
+            action[Mario.KEY_JUMP] = !action[Mario.KEY_JUMP] && actions.nextInt(4) > 0;
+        action[Mario.KEY_SPEED] = actions.nextBoolean();
+        scene.performAction(action);
+        scene.tick();
+
+        long hash = scene.mario.getStatus() * 31L + scene.mario.getMode();
+        for (Sprite sprite : scene.sprites)
+        {
+            hash = hash * 31 + sprite.kind;
+            hash = hash * 31 + Float.floatToIntBits(sprite.x);
+            hash = hash * 31 + Float.floatToIntBits(sprite.y);
+            hash = hash * 31 + Float.floatToIntBits(sprite.xa);
+            hash = hash * 31 + Float.floatToIntBits(sprite.ya);
+        }
+        crc.reset();
+        crc.update(scene.level.getBlocks());
+        hashes[t] = hash * 31 + crc.getValue();
+    }
+    return hashes;
+}
+
+private static void assertSameRun(final String message, final long[] expected, final long[] actual)
+{
+    for (int t = 0; t < TICKS; t++)
+        if (expected[t] != actual[t])
+            fail(message + ": differs from tick " + t + " on");
+}
+
+@Test
+public void testSameOptionsAndActionsGiveSameTicks()
+{
+    for (int i = 0; i < WORLDS; i++)
+        assertSameRun(options(i), play(i), play(i));
+}
+
+@Test
+public void testConcurrentRunsMatchSequential() throws Exception
+{
+    final long[][] expected = new long[WORLDS][];
+    for (int i = 0; i < WORLDS; i++)
+        expected[i] = play(i);
+
+    final long[][] runs = new long[WORLDS][];
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try
+    {
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int t = 0; t < THREADS; t++)
+        {
+            final int thread = t;
+            futures.add(executor.submit(new Callable<Object>()
+            {
+                public Object call()
+                {
+                    for (int i = thread; i < WORLDS; i += THREADS)
+                        runs[i] = play(i);
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures)
+            future.get();
+    } finally
+    {
+        executor.shutdown();
+    }
+
+    for (int i = 0; i < WORLDS; i++)
+        assertSameRun(options(i), expected[i], runs[i]);
+}
+}
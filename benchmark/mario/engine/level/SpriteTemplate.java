@@ -92,6 +92,18 @@ public SpriteTemplate(int type)
     }
 }
 
+/**
+ * @return template of the same type and state that has not spawned a sprite
+ */
+public SpriteTemplate copy()
+{
+    final SpriteTemplate copy = new SpriteTemplate(type);
+    copy.winged = winged;
+    copy.isDead = isDead;
+    copy.lastVisibleTick = lastVisibleTick;
+    return copy;
+}
+
 public void spawn(LevelScene levelScene, int x, int y, int dir)
 {
     if (isDead) return;
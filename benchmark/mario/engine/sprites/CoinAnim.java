@@ -32,11 +32,20 @@ import ch.idsia.benchmark.mario.engine.Art;
 
 public class CoinAnim extends Sprite
 {
-private int life = 16;
+private int life;
 
 public CoinAnim(int xTile, int yTile)
+{
+    init(xTile, yTile);
+}
+
+/**
+ * (Re)initializes the animation, so that pooled instances can be reused.
+ */
+public CoinAnim init(int xTile, int yTile)
 {
     kind = KIND_COIN_ANIM;
+    life = 16;
     sheet = Art.level;
     wPic = hPic = 16;
 
@@ -46,16 +55,17 @@ public CoinAnim(int xTile, int yTile)
     ya = -6f;
     xPic = 0;
     yPic = 2;
+    return this;
 }
 
 public void move()
 {
     if (life-- < 0)
     {
-        Sprite.spriteContext.removeSprite(this);
+        spriteContext.removeSprite(this);
         for (int xx = 0; xx < 2; xx++)
             for (int yy = 0; yy < 2; yy++)
-                Sprite.spriteContext.addSprite(new Sparkle((int) x + xx * 8 + (int) (Math.random() * 8), (int) y + yy * 8 + (int) (Math.random() * 8), 0, 0, 0, 2, 5));
+                spriteContext.addSparkle((int) x + xx * 8 + (int) (spriteContext.cosmeticRandom() * 8), (int) y + yy * 8 + (int) (spriteContext.cosmeticRandom() * 8), 0, 0, 0, 2, 5);
     }
 
     xPic = life & 3;
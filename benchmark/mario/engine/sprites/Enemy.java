@@ -28,7 +28,6 @@
 package ch.idsia.benchmark.mario.engine.sprites;
 
 import ch.idsia.benchmark.mario.engine.Art;
-import ch.idsia.benchmark.mario.engine.GlobalOptions;
 import ch.idsia.benchmark.mario.engine.LevelScene;
 
 import java.awt.*;
@@ -72,7 +71,8 @@ public boolean noFireballDeath;
 public Enemy(LevelScene levelScene, int x, int y, int dir, int type, boolean winged, int mapX, int mapY)
 {
     kind = (byte) type;
-    sheet = Art.enemies;
+    if (!levelScene.isHeadless())
+        sheet = Art.enemies;
     this.winged = winged;
 
     this.x = x;
@@ -84,6 +84,7 @@ public Enemy(LevelScene levelScene, int x, int y, int dir, int type, boolean win
     xPicO = 8;
     yPicO = 31;
 
+    final float creaturesGravity = levelScene.getCreaturesGravity();
     yaa = creaturesGravity * 2;
     yaw = creaturesGravity == 1 ? 1 : 0.3f * creaturesGravity;
 
@@ -158,8 +159,8 @@ public void collideCheck()
                     {
                         spriteContext.addSprite(new Shell(levelScene, x, y, 1));
                     }
-                    ++LevelScene.killedCreaturesTotal;
-                    ++LevelScene.killedCreaturesByStomp;
+                    ++levelScene.killedCreaturesTotal;
+                    ++levelScene.killedCreaturesByStomp;
                 }
             } else
             {
@@ -181,7 +182,7 @@ public void move()
             deadTime = 1;
             for (int i = 0; i < 8; i++)
             {
-                levelScene.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                levelScene.addSparkle((int) (x + levelScene.cosmeticRandom() * 16 - 8) + 4, (int) (y - levelScene.cosmeticRandom() * 8) + 4, (float) (levelScene.cosmeticRandom() * 2 - 1), (float) levelScene.cosmeticRandom() * -1, 0, 1, 5);
             }
             spriteContext.removeSprite(this);
         }
@@ -226,10 +227,10 @@ public void move()
     ya *= winged ? 0.95f : 0.85f;
     if (onGround)
     {
-        xa *= (GROUND_INERTIA + windScale(windCoeff, facing) + iceScale(iceCoeff));
+        xa *= (GROUND_INERTIA + windScale(levelScene.getCreaturesWind(), facing) + iceScale(levelScene.getCreaturesIce()));
     } else
     {
-        xa *= (AIR_INERTIA + windScale(windCoeff, facing) + iceScale(iceCoeff));
+        xa *= (AIR_INERTIA + windScale(levelScene.getCreaturesWind(), facing) + iceScale(levelScene.getCreaturesIce()));
     }
 
     if (!onGround)
@@ -248,7 +249,8 @@ public void move()
 
     if (winged) runFrame = wingTime / 4 % 2;
 
-    xPic = runFrame;
+    if (!levelScene.isHeadless())
+        xPic = runFrame;
 }
 
 public boolean move(float xa, float ya)
@@ -335,7 +337,7 @@ public boolean move(float xa, float ya)
         return false;
     } else
     {
-        if (GlobalOptions.areFrozenCreatures)
+        if (levelScene.areCreaturesFrozen())
             return true;
 
         x += xa;
@@ -377,8 +379,8 @@ public boolean shellCollideCheck(Shell shell)
             hPic = -hPic;
             yPicO = -yPicO + 16;
 //                System.out.println("shellCollideCheck");
-            ++LevelScene.killedCreaturesTotal;
-            ++LevelScene.killedCreaturesByShell;
+            ++levelScene.killedCreaturesTotal;
+            ++levelScene.killedCreaturesByShell;
             return true;
         }
     }
@@ -407,8 +409,8 @@ public boolean fireballCollideCheck(Fireball fireball)
             hPic = -hPic;
             yPicO = -yPicO + 16;
 //                System.out.println("fireballCollideCheck");
-            ++LevelScene.killedCreaturesTotal;
-            ++LevelScene.killedCreaturesByFireBall;
+            ++levelScene.killedCreaturesTotal;
+            ++levelScene.killedCreaturesByFireBall;
             return true;
         }
     }
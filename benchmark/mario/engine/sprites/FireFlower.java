@@ -45,7 +45,8 @@ private int life;
 public FireFlower(LevelScene world, int x, int y)
 {
     kind = KIND_FIRE_FLOWER;
-    sheet = Art.items;
+    if (!world.isHeadless())
+        sheet = Art.items;
 
     this.x = x;
     this.y = y;
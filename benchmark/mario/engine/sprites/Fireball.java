@@ -54,7 +54,8 @@ private int deadTime = 0;
 public Fireball(LevelScene world, float x, float y, int facing)
 {
     kind = KIND_FIREBALL;
-    sheet = Art.particles;
+    if (!world.isHeadless())
+        sheet = Art.particles;
 
     this.x = x;
     this.y = y;
@@ -78,7 +79,7 @@ public void move()
     {
         for (int i = 0; i < 8; i++)
         {
-            world.addSprite(new Sparkle((int) (x + Math.random() * 8 - 4) + 4, (int) (y + Math.random() * 8 - 4) + 2, (float) Math.random() * 2 - 1 - facing, (float) Math.random() * 2 - 1, 0, 1, 5));
+            world.addSparkle((int) (x + world.cosmeticRandom() * 8 - 4) + 4, (int) (y + world.cosmeticRandom() * 8 - 4) + 2, (float) world.cosmeticRandom() * 2 - 1 - facing, (float) world.cosmeticRandom() * 2 - 1, 0, 1, 5);
         }
         spriteContext.removeSprite(this);
 
@@ -107,7 +108,8 @@ public void move()
 
     runTime += (Math.abs(xa)) + 5;
 
-    xPic = (anim) % 4;
+    if (!world.isHeadless())
+        xPic = (anim) % 4;
 
 
     if (!move(xa, 0))
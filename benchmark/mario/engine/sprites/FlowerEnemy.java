@@ -27,7 +27,6 @@
 
 package ch.idsia.benchmark.mario.engine.sprites;
 
-import ch.idsia.benchmark.mario.engine.GlobalOptions;
 import ch.idsia.benchmark.mario.engine.LevelScene;
 
 public class FlowerEnemy extends Enemy
@@ -64,7 +63,7 @@ public FlowerEnemy(LevelScene world, int x, int y, int mapX, int mapY)
 public void move()
 {
     //TODO:|L| check this
-    if (GlobalOptions.areFrozenCreatures == true)
+    if (world.areCreaturesFrozen())
     {
         return;
     }
@@ -77,7 +76,7 @@ public void move()
             deadTime = 1;
             for (int i = 0; i < 8; i++)
             {
-                world.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                world.addSparkle((int) (x + world.cosmeticRandom() * 16 - 8) + 4, (int) (y - world.cosmeticRandom() * 8) + 4, (float) (world.cosmeticRandom() * 2 - 1), (float) world.cosmeticRandom() * -1, 0, 1, 5);
             }
             spriteContext.removeSprite(this);
         }
@@ -114,7 +113,8 @@ public void move()
     ya *= 0.9;
     ya += 0.1f;
 
-    xPic = ((tick / 2) & 1) * 2 + ((tick / 6) & 1);
+    if (!world.isHeadless())
+        xPic = ((tick / 2) & 1) * 2 + ((tick / 6) & 1);
 }
 /*    public void render(Graphics og, float alpha)
     {
@@ -54,7 +54,8 @@ private int life;
 public GreenMushroom(LevelScene world, int x, int y)
 {
     kind = KIND_GREEN_MUSHROOM;
-    sheet = Art.items;
+    if (!world.isHeadless())
+        sheet = Art.items;
 
     this.x = x;
     this.y = y;
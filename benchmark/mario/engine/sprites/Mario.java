@@ -51,20 +51,20 @@ public static final int STATUS_RUNNING = 2;
 public static final int STATUS_WIN = 1;
 public static final int STATUS_DEAD = 0;
 
-private static float marioGravity;
+private float marioGravity;
 
-public static boolean large = false;
-public static boolean fire = false;
-public static int coins = 0;
-public static int hiddenBlocksFound = 0;
-public static int collisionsWithCreatures = 0;
-public static int mushroomsDevoured = 0;
-public static int greenMushroomsDevoured = 0;
-public static int flowersDevoured = 0;
+public boolean large = false;
+public boolean fire = false;
+public int coins = 0;
+public int hiddenBlocksFound = 0;
+public int collisionsWithCreatures = 0;
+public int mushroomsDevoured = 0;
+public int greenMushroomsDevoured = 0;
+public int flowersDevoured = 0;
 
-private static boolean isTrace;
+private boolean isTrace;
 
-private static boolean isMarioInvulnerable;
+private boolean isMarioInvulnerable;
 
 private int status = STATUS_RUNNING;
 // for racoon when carrying the shell
@@ -76,33 +76,13 @@ private int prevHPic;
 private boolean isRacoon;
 private float yaa = 1;
 
-private static float windCoeff = 0f;
-private static float iceCoeff = 0f;
-private static float jumpPower;
+private float windCoeff = 0f;
+private float iceCoeff = 0f;
+private float jumpPower;
 private boolean inLadderZone;
 private boolean onLadder;
 private boolean onTopOfLadder = false;
 
-public static void resetStatic(MarioAIOptions marioAIOptions)
-{
-    large = marioAIOptions.getMarioMode() > 0;
-    fire = marioAIOptions.getMarioMode() == 2;
-    coins = 0;
-    hiddenBlocksFound = 0;
-    mushroomsDevoured = 0;
-    flowersDevoured = 0;
-    collisionsWithCreatures = 0;
-
-    isMarioInvulnerable = marioAIOptions.isMarioInvulnerable();
-    marioGravity = marioAIOptions.getMarioGravity();
-    jumpPower = marioAIOptions.getJumpPower();
-
-    isTrace = marioAIOptions.isTrace();
-
-    iceCoeff = marioAIOptions.getIce();
-    windCoeff = marioAIOptions.getWind();
-}
-
 public int getMode()
 {
     return ((large) ? 1 : 0) + ((fire) ? 1 : 0);
@@ -128,7 +108,7 @@ private boolean ableToShoot = false;
 int width = 4;
 int height = 24;
 
-private static LevelScene levelScene;
+private final LevelScene levelScene;
 public int facing;
 
 public int xDeathPos, yDeathPos;
@@ -140,18 +120,32 @@ private int invulnerableTime = 0;
 public Sprite carried = null;
 //    private static Mario instance;
 
-public Mario(LevelScene levelScene)
+public Mario(LevelScene levelScene, MarioAIOptions marioAIOptions)
 {
     kind = KIND_MARIO;
 //        Mario.instance = this;
     this.levelScene = levelScene;
+    this.spriteContext = levelScene;
+
+    large = marioAIOptions.getMarioMode() > 0;
+    fire = marioAIOptions.getMarioMode() == 2;
+
+    isMarioInvulnerable = marioAIOptions.isMarioInvulnerable();
+    marioGravity = marioAIOptions.getMarioGravity();
+    jumpPower = marioAIOptions.getJumpPower();
+
+    isTrace = marioAIOptions.isTrace();
+
+    iceCoeff = marioAIOptions.getIce();
+    windCoeff = marioAIOptions.getWind();
+
     x = levelScene.getMarioInitialPos().x;
     y = levelScene.getMarioInitialPos().y;
     mapX = (int) (x / 16);
     mapY = (int) (y / 16);
 
     facing = 1;
-    setMode(Mario.large, Mario.fire);
+    setMode(large, fire);
     yaa = marioGravity * 3;
     jT = jumpPower / (marioGravity);
 }
@@ -164,22 +158,22 @@ private boolean newFire;
 
 private void blink(boolean on)
 {
-    Mario.large = on ? newLarge : lastLarge;
-    Mario.fire = on ? newFire : lastFire;
+    large = on ? newLarge : lastLarge;
+    fire = on ? newFire : lastFire;
 
 //        System.out.println("on = " + on);
     if (large)
     {
-        sheet = Art.mario;
-        if (fire)
-            sheet = Art.fireMario;
+        if (!levelScene.isHeadless())
+            sheet = fire ? Art.fireMario : Art.mario;
 
         xPicO = 16;
         yPicO = 31;
         wPic = hPic = 32;
     } else
     {
-        sheet = Art.smallMario;
+        if (!levelScene.isHeadless())
+            sheet = Art.smallMario;
 
         xPicO = 8;
         yPicO = 15;
@@ -195,14 +189,14 @@ void setMode(boolean large, boolean fire)
     if (fire) large = true;
     if (!large) fire = false;
 
-    lastLarge = Mario.large;
-    lastFire = Mario.fire;
+    lastLarge = this.large;
+    lastFire = this.fire;
 
-    Mario.large = large;
-    Mario.fire = fire;
+    this.large = large;
+    this.fire = fire;
 
-    newLarge = Mario.large;
-    newFire = Mario.fire;
+    newLarge = this.large;
+    newFire = this.fire;
 
     blink(true);
 }
@@ -223,7 +217,8 @@ public void setRacoon(boolean isRacoon)
         xPicO = 16;
         yPicO = 31;
         wPic = hPic = 32;
-        this.sheet = Art.racoonmario;
+        if (!levelScene.isHeadless())
+            this.sheet = Art.racoonmario;
     } else
     {
 
@@ -283,7 +278,7 @@ public void move()
     }
 
     if (mapY > -1 && isTrace)
-        ++levelScene.level.marioTrace[this.mapX][this.mapY];
+        levelScene.level.addMarioTrace(this.mapX, this.mapY);
 
     if (winTime > 0)
     {
@@ -394,12 +389,12 @@ public void move()
         sliding = false;
     }
 
-    if (keys[KEY_SPEED] && ableToShoot && Mario.fire && levelScene.fireballsOnScreen < 2)
+    if (keys[KEY_SPEED] && ableToShoot && fire && levelScene.fireballsOnScreen < 2)
     {
         levelScene.addSprite(new Fireball(levelScene, x + facing * 6, y - 20, facing));
     }
     // Cheats:
-    if (GlobalOptions.isPowerRestoration && keys[KEY_SPEED] && (!Mario.large || !Mario.fire))
+    if (levelScene.isPowerRestoration() && keys[KEY_SPEED] && (!large || !fire))
         setMode(true, true);
 //        if (cheatKeys[KEY_LIFE_UP])
 //            this.lives++;
@@ -432,7 +427,7 @@ public void move()
     {
         for (int i = 0; i < 1; i++)
         {
-            levelScene.addSprite(new Sparkle((int) (x + Math.random() * 4 - 2) + facing * 8, (int) (y + Math.random() * 4) - 24, (float) (Math.random() * 2 - 1), (float) Math.random() * 1, 0, 1, 5));
+            levelScene.addSparkle((int) (x + levelScene.cosmeticRandom() * 4 - 2) + facing * 8, (int) (y + levelScene.cosmeticRandom() * 4) - 24, (float) (levelScene.cosmeticRandom() * 2 - 1), (float) levelScene.cosmeticRandom() * 1, 0, 1, 5);
         }
         ya *= 0.5f;
     }
@@ -499,6 +494,14 @@ public void move()
 
 private void calcPic()
 {
+    // the collision box follows the pose; everything else here only picks the animation frame
+    if (large)
+        height = ducking ? 12 : 24;
+    else
+        height = 12;
+    if (levelScene.isHeadless())
+        return;
+
     int runFrame;
 
     if (large || isRacoon)
@@ -534,19 +537,12 @@ private void calcPic()
         {
             for (int i = 0; i < 3; i++)
             {
-                levelScene.addSprite(new Sparkle((int) (x + Math.random() * 8 - 4), (int) (y + Math.random() * 4), (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                levelScene.addSparkle((int) (x + levelScene.cosmeticRandom() * 8 - 4), (int) (y + levelScene.cosmeticRandom() * 4), (float) (levelScene.cosmeticRandom() * 2 - 1), (float) levelScene.cosmeticRandom() * -1, 0, 1, 5);
             }
         }
     }
 
-    if (large)
-    {
-        if (ducking) runFrame = 14;
-        height = ducking ? 12 : 24;
-    } else
-    {
-        height = 12;
-    }
+    if (large && ducking) runFrame = 14;
 
     xPic = runFrame;
 }
@@ -653,11 +649,11 @@ private boolean isBlocking(final float _x, final float _y, final float xa, final
 
     if (((Level.TILE_BEHAVIORS[block & 0xff]) & Level.BIT_PICKUPABLE) > 0)
     {
-        Mario.gainCoin();
+        gainCoin();
         levelScene.level.setBlock(x, y, (byte) 0);
         for (int xx = 0; xx < 2; xx++)
             for (int yy = 0; yy < 2; yy++)
-                levelScene.addSprite(new Sparkle(x * 16 + xx * 8 + (int) (Math.random() * 8), y * 16 + yy * 8 + (int) (Math.random() * 8), 0, 0, 0, 2, 5));
+                levelScene.addSparkle(x * 16 + xx * 8 + (int) (levelScene.cosmeticRandom() * 8), y * 16 + yy * 8 + (int) (levelScene.cosmeticRandom() * 8), 0, 0, 0, 2, 5);
     }
 
     if (blocking && ya < 0)
@@ -766,7 +762,7 @@ public void devourFlower()
         levelScene.mario.setMode(true, true);
     } else
     {
-        Mario.gainCoin();
+        gainCoin();
     }
     ++flowersDevoured;
     levelScene.appendBonusPoints(MarioEnvironment.IntermediateRewardsSystemOfValues.flowerFire);
@@ -781,7 +777,7 @@ public void devourMushroom()
         levelScene.mario.setMode(true, false);
     } else
     {
-        Mario.gainCoin();
+        gainCoin();
     }
     ++mushroomsDevoured;
     levelScene.appendBonusPoints(MarioEnvironment.IntermediateRewardsSystemOfValues.mushroom);
@@ -831,7 +827,7 @@ public void stomp(final BulletBill bill)
     levelScene.appendBonusPoints(MarioEnvironment.IntermediateRewardsSystemOfValues.stomp);
 }
 
-public static void gainCoin()
+public void gainCoin()
 {
     coins++;
     levelScene.appendBonusPoints(MarioEnvironment.IntermediateRewardsSystemOfValues.coins);
@@ -839,12 +835,17 @@ public static void gainCoin()
 //            get1Up();
 }
 
-public static void gainHiddenBlock()
+public void gainHiddenBlock()
 {
     ++hiddenBlocksFound;
     levelScene.appendBonusPoints(MarioEnvironment.IntermediateRewardsSystemOfValues.hiddenBlock);
 }
 
+public boolean isTrace()
+{
+    return isTrace;
+}
+
 public int getStatus()
 {
     return status;
@@ -55,7 +55,8 @@ private int life;
 public Mushroom(LevelScene world, int x, int y)
 {
     kind = KIND_MUSHROOM;
-    sheet = Art.items;
+    if (!world.isHeadless())
+        sheet = Art.items;
 
     this.x = x;
     this.y = y;
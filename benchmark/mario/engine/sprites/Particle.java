@@ -33,12 +33,15 @@ public class Particle extends Sprite
 {
 public int life;
 
-public Particle(int x, int y, float xa, float ya)
+public Particle(int x, int y, float xa, float ya, int xPic, int yPic)
 {
-    this(x, y, xa, ya, (int) (Math.random() * 2), 0);
+    init(x, y, xa, ya, xPic, yPic);
 }
 
-public Particle(int x, int y, float xa, float ya, int xPic, int yPic)
+/**
+ * (Re)initializes the particle, so that pooled instances can be reused.
+ */
+public Particle init(int x, int y, float xa, float ya, int xPic, int yPic)
 {
     kind = KIND_PARTICLE;
     sheet = Art.particles;
@@ -54,11 +57,12 @@ public Particle(int x, int y, float xa, float ya, int xPic, int yPic)
     wPic = 8;
     hPic = 8;
     life = 10;
+    return this;
 }
 
 public void move()
 {
-    if (life-- < 0) Sprite.spriteContext.removeSprite(this);
+    if (life-- < 0) spriteContext.removeSprite(this);
     x += xa;
     y += ya;
     ya *= 0.95f;
@@ -38,7 +38,8 @@ private int runTime = 0;
 public Princess(LevelScene world, int x, int y, int mapX, int mapY)
 {
     kind = KIND_PRINCESS;
-    sheet = Art.princess;
+    if (!world.isHeadless())
+        sheet = Art.princess;
 
     this.x = x;
     this.y = y;
@@ -54,6 +55,8 @@ public void collideCheck()
 
 public void move()
 {
+    if (world.isHeadless())
+        return;
     runTime += 5;
 
     xPic = (runTime / 20) % 2;
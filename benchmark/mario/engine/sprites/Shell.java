@@ -56,7 +56,8 @@ public boolean carried;
 public Shell(LevelScene world, float x, float y, int type)
 {
     kind = KIND_SHELL;
-    sheet = Art.enemies;
+    if (!world.isHeadless())
+        sheet = Art.enemies;
 
     this.x = x;
     this.y = y;
@@ -72,7 +73,7 @@ public Shell(LevelScene world, float x, float y, int type)
     xPic = 4;
     ya = -5;
 
-    yaa = creaturesGravity * 2;
+    yaa = world.getCreaturesGravity() * 2;
 }
 
 public boolean fireballCollideCheck(Fireball fireball)
@@ -154,7 +155,7 @@ public void move()
             deadTime = 1;
             for (int i = 0; i < 8; i++)
             {
-                world.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                world.addSparkle((int) (x + world.cosmeticRandom() * 16 - 8) + 4, (int) (y - world.cosmeticRandom() * 8) + 4, (float) (world.cosmeticRandom() * 2 - 1), (float) world.cosmeticRandom() * -1, 0, 1, 5);
             }
             spriteContext.removeSprite(this);
         }
@@ -192,7 +193,8 @@ public void move()
 
 //        runTime += (Math.abs(xa)) + 5;
 
-    xPic = (anim / 2) % 4 + 3;
+    if (!world.isHeadless())
+        xPic = (anim / 2) % 4 + 3;
 
 
     if (!move(xa, 0))
@@ -34,12 +34,15 @@ public class Sparkle extends Sprite
 public int life;
 public int xPicStart;
 
-public Sparkle(int x, int y, float xa, float ya)
+public Sparkle(int x, int y, float xa, float ya, int xPic, int yPic, int life)
 {
-    this(x, y, xa, ya, (int) (Math.random() * 2), 0, 5);
+    init(x, y, xa, ya, xPic, yPic, life);
 }
 
-public Sparkle(int x, int y, float xa, float ya, int xPic, int yPic, int timeSpan)
+/**
+ * (Re)initializes the sparkle, so that pooled instances can be reused.
+ */
+public Sparkle init(int x, int y, float xa, float ya, int xPic, int yPic, int life)
 {
     kind = KIND_SPARCLE;
     sheet = Art.particles;
@@ -55,7 +58,8 @@ public Sparkle(int x, int y, float xa, float ya, int xPic, int yPic, int timeSpa
 
     wPic = 8;
     hPic = 8;
-    life = 10 + (int) (Math.random() * timeSpan);
+    this.life = life;
+    return this;
 }
 
 public void move()
@@ -65,7 +69,7 @@ public void move()
     else
         xPic = xPicStart + (10 - life) * 4 / 10;
 
-    if (life-- < 0) Sprite.spriteContext.removeSprite(this);
+    if (life-- < 0) spriteContext.removeSprite(this);
 
     x += xa;
     y += ya;
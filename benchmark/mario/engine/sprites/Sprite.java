@@ -33,7 +33,7 @@ import ch.idsia.benchmark.mario.engine.level.SpriteTemplate;
 
 import java.awt.*;
 
-public class Sprite
+public class Sprite implements Cloneable
 {
 public static final int KIND_NONE = 0;
 public static final int KIND_MARIO = -31;
@@ -61,7 +61,7 @@ public static final int KIND_FIREBALL = 25;
 
 public static final int KIND_UNDEF = -42;
 
-public static SpriteContext spriteContext;
+public SpriteContext spriteContext;
 public byte kind = KIND_UNDEF;
 
 protected static float GROUND_INERTIA = 0.89f;
@@ -85,24 +85,8 @@ public int layer = 1;
 
 public SpriteTemplate spriteTemplate;
 
-public static void setCreaturesGravity(final float creaturesGravity)
-{
-    Sprite.creaturesGravity = creaturesGravity;
-}
-
-public static void setCreaturesWind(final float wind)
-{
-    Sprite.windCoeff = wind;
-}
-
-public static void setCreaturesIce(final float ice)
-{
-    Sprite.iceCoeff = ice;
-}
-
-protected static float creaturesGravity;
-protected static float windCoeff = 0;
-protected static float iceCoeff = 0;
+// set by LevelScene.removeSprite until the sprite has been dropped from the list at the end of the tick
+public boolean removed;
 
 public static String getNameByKind(final int kind)
 {
@@ -275,4 +259,22 @@ public boolean isDead()
 {
     return spriteTemplate != null && spriteTemplate.isDead;
 }
+
+/**
+ * Field-by-field copy used by {@link ch.idsia.benchmark.mario.engine.LevelScene#snapshot()}. The world,
+ * the sprite template and the sprite sheets stay shared; references to other sprites are remapped by
+ * the caller.
+ *
+ * @return a shallow copy of this sprite
+ */
+public Sprite copy()
+{
+    try
+    {
+        return (Sprite) super.clone();
+    } catch (CloneNotSupportedException e)
+    {
+        throw new InternalError(e.toString());
+    }
+}
 }
\ No newline at end of file
@@ -32,4 +32,14 @@ public interface SpriteContext
 public void addSprite(Sprite sprite);
 
 public void removeSprite(Sprite sprite);
+
+/**
+ * Adds a purely cosmetic sparkle; see {@link Sparkle#Sparkle(int, int, float, float, int, int, int)}.
+ */
+public void addSparkle(int x, int y, float xa, float ya, int xPic, int yPic, int timeSpan);
+
+/**
+ * @return next value in [0, 1) of the world's stream for visual effects, in place of Math.random()
+ */
+public double cosmeticRandom();
 }
@@ -1,6 +1,5 @@
 package ch.idsia.benchmark.mario.engine.sprites;
 
-import ch.idsia.benchmark.mario.engine.GlobalOptions;
 import ch.idsia.benchmark.mario.engine.LevelScene;
 
 /**
@@ -29,7 +28,7 @@ public WaveGoomba(LevelScene world, int x, int y, int dir, int mapX, int mapY)
 
 public void move()
 {
-    if (GlobalOptions.areFrozenCreatures == true)
+    if (world.areCreaturesFrozen())
     {
         return;
     }
@@ -43,7 +42,7 @@ public void move()
             deadTime = 1;
             for (int i = 0; i < 8; i++)
             {
-                world.addSprite(new Sparkle((int) (x + Math.random() * 16 - 8) + 4, (int) (y - Math.random() * 8) + 4, (float) (Math.random() * 2 - 1), (float) Math.random() * -1, 0, 1, 5));
+                world.addSparkle((int) (x + world.cosmeticRandom() * 16 - 8) + 4, (int) (y - world.cosmeticRandom() * 8) + 4, (float) (world.cosmeticRandom() * 2 - 1), (float) world.cosmeticRandom() * -1, 0, 1, 5);
             }
             spriteContext.removeSprite(this);
         }
@@ -103,10 +102,10 @@ public void move()
     ya *= winged ? 0.95 : 0.85f;
     if (onGround)
     {
-        xa *= (GROUND_INERTIA + windScale(windCoeff, facing) + iceScale(iceCoeff));
+        xa *= (GROUND_INERTIA + windScale(world.getCreaturesWind(), facing) + iceScale(world.getCreaturesIce()));
     } else
     {
-        xa *= (AIR_INERTIA + windScale(windCoeff, facing) + iceScale(iceCoeff));
+        xa *= (AIR_INERTIA + windScale(world.getCreaturesWind(), facing) + iceScale(world.getCreaturesIce()));
     }
 
     if (!onGround && !winged)
@@ -116,6 +115,7 @@ public void move()
 
     if (winged) runFrame = wingTime / 4 % 2;
 
-    xPic = runFrame;
+    if (!world.isHeadless())
+        xPic = runFrame;
 }
 }
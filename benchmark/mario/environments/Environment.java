@@ -33,6 +33,8 @@ import ch.idsia.benchmark.mario.engine.sprites.Mario;
 import ch.idsia.tools.EvaluationInfo;
 import ch.idsia.tools.MarioAIOptions;
 
+import java.nio.IntBuffer;
+
 /**
  * Created by IntelliJ IDEA.
  * User: Sergey Karakovskiy
@@ -98,6 +100,25 @@ public byte[][] getEnemiesObservationZ(int ZLevelEnemies);
 
 public int[] getSerializedFullObservationZZ(int ZLevelScene, int ZLevelEnemies);
 
+/**
+ * Writes the observation of {@link #getSerializedFullObservationZZ} into a buffer of the caller, in a
+ * single pass over the receptive field and the sprites and without allocating anything. Unlike
+ * getSerializedFullObservationZZ, which returns a new array on every call, the buffer is overwritten.
+ *
+ * @param obs    buffer with room for <code>2 * width * height + 11</code> ints from <code>offset</code> on
+ * @param offset position of the first int
+ */
+public void serializeFullObservationZZ(int ZLevelScene, int ZLevelEnemies, int[] obs, int offset);
+
+/**
+ * As {@link #serializeFullObservationZZ(int, int, int[], int)}, straight into a buffer such as a view of a
+ * memory-mapped file, at absolute positions; the position of the buffer is neither used nor changed.
+ *
+ * @param obs    buffer with room for <code>2 * width * height + 11</code> ints from <code>offset</code> on
+ * @param offset index of the first int
+ */
+public void serializeFullObservationZZ(int ZLevelScene, int ZLevelEnemies, IntBuffer obs, int offset);
+
 /**
  * Serializes the LevelScene observation from 22x22 byte array to a 1x484 byte array
  *
@@ -116,6 +137,16 @@ public int[] getSerializedEnemiesObservationZ(int ZLevelEnemies);
 
 public int[] getSerializedMergedObservationZZ(int ZLevelScene, int ZLevelEnemies);
 
+/**
+ * Lists the sprites of {@link #getEnemiesObservationZ} as <code>(kind, dx, dy)</code> triples instead of a
+ * grid: the generalized kind and the cell offset from Mario. Cells without sprites cost nothing. Several
+ * sprites may share a cell; writing the triples into an empty grid in order gives the enemies observation.
+ *
+ * @param out receives up to <code>out.length / 3</code> triples
+ * @return number of sprites in the receptive field, which may exceed the number of triples written
+ */
+public int getEnemiesObservationSparseZ(int ZLevelEnemies, int[] out);
+
 public float[] getCreaturesFloatPos();
 
 // KILLS
@@ -163,6 +194,26 @@ void setAgent(Agent agent);
 
 public int getIntermediateReward();
 
+/**
+ * Performs several agent steps in one call, for learners that act only every few frames. Every action is
+ * held for <code>frameSkip</code> ticks; once the level is finished no more ticks are made.
+ * <p/>
+ * The result holds one record of {@link #getStepRecordSize()} ints per action: the observation in the
+ * layout of {@link #getSerializedFullObservationZZ} at the Z levels of the options, followed by the
+ * intermediate reward gained during the step. Steps after the end of the episode repeat the final
+ * observation with a reward of 0; the end shows in the Mario status, the first int of the Mario state.
+ *
+ * @param actions   one array of {@link #numberOfKeys} keys per step
+ * @param frameSkip number of ticks every action is repeated for, at least 1
+ * @return records of all steps; the array is reused by the next call with the same number of actions
+ */
+public int[] step(boolean[][] actions, int frameSkip);
+
+/**
+ * @return number of ints per step in the result of {@link #step(boolean[][], int)}
+ */
+public int getStepRecordSize();
+
 public int[] getMarioEgoPos();
 
 public void closeRecorder();
@@ -30,6 +30,7 @@ package ch.idsia.benchmark.mario.environments;
 import ch.idsia.agents.Agent;
 import ch.idsia.benchmark.mario.engine.*;
 import ch.idsia.benchmark.mario.engine.level.Level;
+import ch.idsia.benchmark.mario.engine.level.LevelCache;
 import ch.idsia.benchmark.mario.engine.sprites.Mario;
 import ch.idsia.benchmark.mario.engine.sprites.Sprite;
 import ch.idsia.benchmark.tasks.SystemOfValues;
@@ -39,8 +40,10 @@ import ch.idsia.tools.punj.PunctualJudge;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.IntBuffer;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -67,6 +70,16 @@ public List<Sprite> sprites;
 private int[] serializedLevelScene;   // memory is allocated in reset
 private int[] serializedEnemies;      // memory is allocated in reset
 private int[] serializedMergedObservation; // memory is allocated in reset
+private int[] fieldRow;   // memory is allocated in reset
+private int[] emptyField; // zeros, memory is allocated in reset
+private boolean incrementalObservation = false;
+private ReceptiveFieldWindow levelWindow; // allocated on first use after reset
+private int[] visibleSprites = new int[32];
+private TensorObservation tensor; // created on first use
+private int[] stepRecords;
+
+private int ZLevelScene = 1;
+private int ZLevelEnemies = 0;
 
 private final LevelScene levelScene;
 //    private int frame = 0;
@@ -74,9 +87,9 @@ private MarioVisualComponent marioVisualComponent;
 private Agent agent;
 
 private static final MarioEnvironment ourInstance = new MarioEnvironment();
-private static final EvaluationInfo evaluationInfo = new EvaluationInfo();
+private final EvaluationInfo evaluationInfo = new EvaluationInfo();
 
-private static String marioTraceFile;
+private String marioTraceFile;
 
 private Recorder recorder;
 
@@ -84,18 +97,39 @@ public static SystemOfValues IntermediateRewardsSystemOfValues = new SystemOfVal
 
 DecimalFormat df = new DecimalFormat("######.#");
 
+static
+{
+    System.out.println(GlobalOptions.getBenchmarkName());
+}
+
+/**
+ * @return the shared environment used by the tasks and tools working with a single world
+ */
 public static MarioEnvironment getInstance()
 {
     return ourInstance;
 }
 
+/**
+ * Creates an environment with a world of its own. Independent instances can be reset and ticked
+ * concurrently from different threads, one thread per instance.
+ *
+ * @return a new environment sharing no simulation state with any other instance
+ */
+public static MarioEnvironment newInstance()
+{
+    final MarioEnvironment environment = new MarioEnvironment();
+    // the visual component belongs to the shared instance
+    environment.levelScene.setDisplayOwner(false);
+    return environment;
+}
+
 private MarioEnvironment()
 {
 //        System.out.println("System.getProperty(\"java.awt.headless\") = " + System.getProperty("java.awt.headless"));
 //        System.out.println("System.getProperty(\"verbose\") = " + System.getProperty("-verbose"));
 //        System.out.println("Java: JA ZDES'!!");
 //        System.out.flush();
-    System.out.println(GlobalOptions.getBenchmarkName());
     levelScene = new LevelScene();
 }
 
@@ -134,6 +168,9 @@ public void reset(MarioAIOptions setUpOptions)
         serializedLevelScene = new int[receptiveFieldHeight * receptiveFieldWidth];
         serializedEnemies = new int[receptiveFieldHeight * receptiveFieldWidth];
         serializedMergedObservation = new int[receptiveFieldHeight * receptiveFieldWidth];
+        fieldRow = new int[receptiveFieldWidth];
+        emptyField = new int[receptiveFieldHeight * receptiveFieldWidth];
+        levelWindow = null;
 
         levelSceneZ = new byte[receptiveFieldHeight][receptiveFieldWidth];
         enemiesZ = new byte[receptiveFieldHeight][receptiveFieldWidth];
@@ -151,6 +188,8 @@ public void reset(MarioAIOptions setUpOptions)
         marioEgoPos[1] = getReceptiveFieldHeight() / 2;
 
     marioTraceFile = setUpOptions.getTraceFileName();
+    ZLevelScene = setUpOptions.getZLevelScene();
+    ZLevelEnemies = setUpOptions.getZLevelEnemies();
 
     if (setUpOptions.isVisualization())
     {
@@ -186,7 +225,7 @@ public void reset(MarioAIOptions setUpOptions)
                 recorder = new Recorder(recordingFileName);
 
             recorder.createFile("level.lvl");
-            recorder.writeObject(levelScene.level);
+            recorder.writeLevel(levelScene.level);
             recorder.closeFile();
 
             recorder.createFile("options");
@@ -207,10 +246,123 @@ public void reset(MarioAIOptions setUpOptions)
     PunctualJudge.resetCounter();
 }
 
+/**
+ * @param headless whether the world skips purely cosmetic sprites, see {@link LevelScene#setHeadless(boolean)}
+ */
+public void setHeadless(final boolean headless)
+{
+    levelScene.setHeadless(headless);
+}
+
+/**
+ * Starts generating the level of a later episode in the background, so that a reset with the same options
+ * finds it ready instead of generating it. See {@link LevelCache#prefetch}.
+ */
+public void prefetchLevel(final MarioAIOptions options)
+{
+    LevelCache.getShared().prefetch(options);
+}
+
+/**
+ * In incremental mode the level scene part of the serialized observations is kept between calls and
+ * only updated where Mario's movement or changed blocks require it, which pays off for large receptive
+ * fields. The results are the same in both modes.
+ */
+public void setIncrementalObservation(final boolean incremental)
+{
+    incrementalObservation = incremental;
+    if (!incremental)
+        levelWindow = null;
+}
+
+/**
+ * Chooses the planes of {@link #serializeTensorObservation(float[], int)}, as a comma separated list of
+ * channel names out of
+ * <code>solid, halfSolid, coin, question, brick, goomba, koopa, spiky, flower, bulletBill, shell, mario,
+ * mushroom, fireFlower, fireball</code>; all of them, in this order, unless set.
+ *
+ * @throws IllegalArgumentException for unknown or repeated channel names
+ */
+public void setTensorChannels(final String channels)
+{
+    tensor = new TensorObservation(channels);
+}
+
+/**
+ * @return number of planes of the tensor observation
+ */
+public int getTensorChannelCount()
+{
+    return tensorObservation().getChannelCount();
+}
+
+/**
+ * Counts the values of this world that the Z level generalizations of the observations do not know of and pass
+ * through as they are, a hint at a level tiles bug. Done on request, so that observations do not pay for it.
+ *
+ * @return number of level cells unknown at the level scene Z level plus number of sprites unknown at the enemies Z
+ *         level
+ */
+public int getUnknownGeneralizationCount()
+{
+    final Level level = levelScene.level;
+    final byte[] blocks = level.getBlocks();
+    int count = 0;
+    for (int cell = 0; cell < level.length * level.height; cell++)
+        if (GeneralizerLevelScene.isUnknown(blocks[cell], ZLevelScene))
+            count++;
+    final SpriteIndex index = levelScene.getSpriteIndex();
+    for (int e = 0; e < index.size(); e++)
+        if (GeneralizerEnemies.isUnknown(index.getKind(e), ZLevelEnemies))
+            count++;
+    return count;
+}
+
+/**
+ * Writes the receptive field as one binary plane per tensor channel, channel-major and each plane row by
+ * row, read directly from the level and the sprites instead of from a merged observation.
+ *
+ * @param obs room for <code>channels * width * height</code> floats from <code>offset</code> on
+ */
+public void serializeTensorObservation(final float[] obs, final int offset)
+{
+    gatherTensor().writeFloats(obs, offset);
+}
+
+/**
+ * The tensor observation of {@link #serializeTensorObservation(float[], int)} packed to one bit per value,
+ * value <code>i</code> in bit <code>i % 64</code> of <code>obs[offset + i / 64]</code>.
+ *
+ * @param obs room for <code>(channels * width * height + 63) / 64</code> longs from <code>offset</code> on
+ */
+public void serializeTensorObservationBits(final long[] obs, final int offset)
+{
+    gatherTensor().writeBits(obs, offset);
+}
+
+private TensorObservation tensorObservation()
+{
+    if (tensor == null)
+        tensor = new TensorObservation(TensorObservation.DEFAULT_CHANNELS);
+    return tensor;
+}
+
+private TensorObservation gatherTensor()
+{
+    final Mario mario = levelScene.mario;
+    final int x0 = mario.mapX - marioEgoPos[1];
+    final int y0 = mario.mapY - marioEgoPos[0];
+    final int count = queryVisibleSprites(x0, y0);
+    final TensorObservation t = tensorObservation();
+    t.gather(levelScene.level, mario, levelScene.getSpriteIndex(), visibleSprites, count,
+            x0, y0, receptiveFieldWidth, receptiveFieldHeight);
+    return t;
+}
+
 public void tick()
 {
     levelScene.tick();
-    if (GlobalOptions.isVisualization)
+    if (GlobalOptions.isVisualization && marioVisualComponent != null)
         marioVisualComponent.tick();
 }
 
@@ -234,7 +386,7 @@ public byte[][] getLevelSceneObservationZ(int ZLevel)
         {
             if (x >= 0 && x < levelScene.level.length && y >= 0 && y < levelScene.level.height)
             {
-                mergedZZ[row][col] = levelSceneZ[row][col] = GeneralizerLevelScene.ZLevelGeneralization(levelScene.level.map[x][y], ZLevel);
+                mergedZZ[row][col] = levelSceneZ[row][col] = GeneralizerLevelScene.ZLevelGeneralization(levelScene.level.getBlock(x, y), ZLevel);
             } else
             {
                 mergedZZ[row][col] = levelSceneZ[row][col] = 0;
@@ -252,23 +404,18 @@ public byte[][] getEnemiesObservationZ(int ZLevel)
     for (int w = 0; w < enemiesZ.length; w++)
         for (int h = 0; h < enemiesZ[0].length; h++)
             enemiesZ[w][h] = 0;
-    for (Sprite sprite : sprites)
+    final SpriteIndex index = levelScene.getSpriteIndex();
+    final int x0 = levelScene.mario.mapX - marioEgoCol;
+    final int y0 = levelScene.mario.mapY - marioEgoRow;
+    for (int s = 0, n = queryVisibleSprites(x0, y0); s < n; s++)
     {
-        if (sprite.isDead() || sprite.kind == levelScene.mario.kind)
+        final int e = visibleSprites[s];
+        if (index.getKind(e) == Sprite.KIND_PRINCESS)
             continue;
-        if (sprite.mapX >= 0 &&
-                sprite.mapX >= levelScene.mario.mapX - marioEgoCol &&
-                sprite.mapX <= levelScene.mario.mapX + (receptiveFieldWidth - marioEgoCol - 1) &&
-                sprite.mapY >= 0 &&
-                sprite.mapY >= levelScene.mario.mapY - marioEgoRow &&
-                sprite.mapY <= levelScene.mario.mapY + (receptiveFieldHeight - marioEgoRow - 1) &&
-                sprite.kind != Sprite.KIND_PRINCESS)
-        {
-            int row = sprite.mapY - levelScene.mario.mapY + marioEgoRow;
-            int col = sprite.mapX - levelScene.mario.mapX + marioEgoCol;
-            // TODO:!H! take care about side effects of line 243 and be sure not to contaminate levelSceneObservation
-            mergedZZ[row][col] = enemiesZ[row][col] = GeneralizerEnemies.ZLevelGeneralization(sprite.kind, ZLevel);
-        }
+        int row = index.getMapY(e) - y0;
+        int col = index.getMapX(e) - x0;
+        // TODO:!H! take care about side effects of line 243 and be sure not to contaminate levelSceneObservation
+        mergedZZ[row][col] = enemiesZ[row][col] = GeneralizerEnemies.ZLevelGeneralization(index.getKind(e), ZLevel);
     }
     return enemiesZ;
 }
@@ -290,7 +437,7 @@ public byte[][] getMergedObservationZZ(int ZLevelScene, int ZLevelEnemies)
         {
             if (x >= 0 && x < levelScene.level.xExit && y >= 0 && y < levelScene.level.height)
             {
-                mergedZZ[row][col] = GeneralizerLevelScene.ZLevelGeneralization(levelScene.level.map[x][y], ZLevelScene);
+                mergedZZ[row][col] = GeneralizerLevelScene.ZLevelGeneralization(levelScene.level.getBlock(x, y), ZLevelScene);
             } else
                 mergedZZ[row][col] = 0;
 //                if (x == MarioXInMap && y == MarioYInMap)
@@ -300,24 +447,17 @@ public byte[][] getMergedObservationZZ(int ZLevelScene, int ZLevelEnemies)
 //        for (int w = 0; w < mergedZZ.length; w++)
 //            for (int h = 0; h < mergedZZ[0].length; h++)
 //                mergedZZ[w][h] = -1;
-    for (Sprite sprite : sprites)
+    final SpriteIndex index = levelScene.getSpriteIndex();
+    final int x0 = levelScene.mario.mapX - mCol;
+    final int y0 = levelScene.mario.mapY - mRow;
+    for (int s = 0, n = queryVisibleSprites(x0, y0); s < n; s++)
     {
-        if (sprite.isDead() || sprite.kind == levelScene.mario.kind)
+        final int e = visibleSprites[s];
+        if (index.getKind(e) == Sprite.KIND_PRINCESS)
             continue;
-        if (sprite.mapX >= 0 &&
-                sprite.mapX >= levelScene.mario.mapX - mCol &&
-                sprite.mapX <= levelScene.mario.mapX + (receptiveFieldWidth - mCol - 1) &&
-                sprite.mapY >= 0 &&
-                sprite.mapY >= levelScene.mario.mapY - mRow &&
-                sprite.mapY <= levelScene.mario.mapY + (receptiveFieldHeight - mRow - 1) &&
-                sprite.kind != Sprite.KIND_PRINCESS)
-        {
-            int row = sprite.mapY - levelScene.mario.mapY + mRow;
-            int col = sprite.mapX - levelScene.mario.mapX + mCol;
-            byte tmp = GeneralizerEnemies.ZLevelGeneralization(sprite.kind, ZLevelEnemies);
-            if (tmp != Sprite.KIND_NONE)
-                mergedZZ[row][col] = tmp;
-        }
+        byte tmp = GeneralizerEnemies.ZLevelGeneralization(index.getKind(e), ZLevelEnemies);
+        if (tmp != Sprite.KIND_NONE)
+            mergedZZ[index.getMapY(e) - y0][index.getMapX(e) - x0] = tmp;
     }
 
     return mergedZZ;
@@ -485,15 +625,126 @@ public List<Sprite> getSprites()
 
 public int[] getSerializedFullObservationZZ(int ZLevelScene, int ZLevelEnemies)
 {
-    int[] obs = new int[receptiveFieldHeight * receptiveFieldWidth * 2 + 11]; // 11 is a size of the MarioState array
+    // a new array on every call, so agents may keep past observations; serializeFullObservationZZ reuses a buffer
+    final int[] obs = new int[receptiveFieldHeight * receptiveFieldWidth * 2 + 11]; // 11 is a size of the MarioState array
+    serializeFullObservationZZ(ZLevelScene, ZLevelEnemies, obs, 0);
+    return obs;
+}
 
-    int receptiveFieldSize = receptiveFieldWidth * receptiveFieldHeight;
+public void serializeFullObservationZZ(int ZLevelScene, int ZLevelEnemies, int[] obs, int offset)
+{
+    serializeFullObservationZZ(ZLevelScene, ZLevelEnemies, obs, null, offset);
+}
 
-    System.arraycopy(getSerializedLevelSceneObservationZ(ZLevelScene), 0, obs, 0, receptiveFieldSize);
-    System.arraycopy(getSerializedEnemiesObservationZ(ZLevelScene), 0, obs, receptiveFieldSize, receptiveFieldSize);
-    System.arraycopy(getMarioState(), 0, obs, receptiveFieldSize * 2, 11);
+public void serializeFullObservationZZ(int ZLevelScene, int ZLevelEnemies, IntBuffer obs, int offset)
+{
+    serializeFullObservationZZ(ZLevelScene, ZLevelEnemies, null, obs, offset);
+}
 
-    return obs;
+// writes into exactly one of array and buffer
+private void serializeFullObservationZZ(int ZLevelScene, int ZLevelEnemies, int[] array, IntBuffer buffer, int offset)
+{
+    final Level level = levelScene.level;
+    final Mario mario = levelScene.mario;
+    final int mRow = marioEgoPos[0];
+    final int mCol = marioEgoPos[1];
+    final int x0 = mario.mapX - mCol;
+    final int y0 = mario.mapY - mRow;
+
+    // level scene, row by row
+    int i = offset;
+    if (incrementalObservation)
+    {
+        if (levelWindow == null)
+            levelWindow = new ReceptiveFieldWindow(receptiveFieldWidth, receptiveFieldHeight);
+        levelWindow.update(level, x0, y0, ZLevelScene);
+        if (array != null)
+            levelWindow.copyTo(array, offset);
+        else
+            levelWindow.copyTo(buffer, offset);
+        i += receptiveFieldWidth * receptiveFieldHeight;
+    } else
+    {
+        final byte[] blocks = level.getBlocks();
+        for (int row = 0, y = y0; row < receptiveFieldHeight; row++, y++)
+        {
+            final boolean yInside = y >= 0 && y < level.height;
+            if (array != null)
+                for (int col = 0, x = x0; col < receptiveFieldWidth; col++, x++)
+                    array[i++] = yInside && x >= 0 && x < level.length ? GeneralizerLevelScene.ZLevelGeneralization(blocks[x * level.height + y], ZLevelScene) : 0;
+            else
+            {
+                // a row at a time: single puts into a direct buffer cost more than a bulk put of the row
+                final int[] r = fieldRow;
+                for (int col = 0, x = x0; col < receptiveFieldWidth; col++, x++)
+                    r[col] = yInside && x >= 0 && x < level.length ? GeneralizerLevelScene.ZLevelGeneralization(blocks[x * level.height + y], ZLevelScene) : 0;
+                buffer.put(i, r, 0, receptiveFieldWidth);
+                i += receptiveFieldWidth;
+            }
+        }
+    }
+
+    // enemies; as in getEnemiesObservationZ a later sprite overwrites an earlier one in the same cell. Generalized
+    // at ZLevelScene, as the full observation always has been
+    final int enemies = i;
+    if (array != null)
+        Arrays.fill(array, enemies, enemies + receptiveFieldHeight * receptiveFieldWidth, 0);
+    else
+        buffer.put(enemies, emptyField, 0, emptyField.length);
+    final SpriteIndex index = levelScene.getSpriteIndex();
+    for (int s = 0, n = queryVisibleSprites(x0, y0); s < n; s++)
+    {
+        final int e = visibleSprites[s];
+        if (index.getKind(e) == Sprite.KIND_PRINCESS)
+            continue;
+        final int cell = enemies + (index.getMapY(e) - y0) * receptiveFieldWidth + index.getMapX(e) - x0;
+        final byte kind = GeneralizerEnemies.ZLevelGeneralization(index.getKind(e), ZLevelScene);
+        if (array != null)
+            array[cell] = kind;
+        else
+            buffer.put(cell, kind);
+    }
+
+    if (array != null)
+        System.arraycopy(levelScene.getMarioState(), 0, array, enemies + receptiveFieldHeight * receptiveFieldWidth, 11);
+    else
+        buffer.put(enemies + receptiveFieldHeight * receptiveFieldWidth, levelScene.getMarioState(), 0, 11);
+}
+
+public int getEnemiesObservationSparseZ(int ZLevelEnemies, int[] out)
+{
+    final SpriteIndex index = levelScene.getSpriteIndex();
+    final Mario mario = levelScene.mario;
+    final int capacity = out.length / 3;
+    int count = 0;
+    for (int s = 0, n = queryVisibleSprites(mario.mapX - marioEgoPos[1], mario.mapY - marioEgoPos[0]); s < n; s++)
+    {
+        final int e = visibleSprites[s];
+        if (index.getKind(e) == Sprite.KIND_PRINCESS)
+            continue;
+        if (count < capacity)
+        {
+            out[3 * count] = GeneralizerEnemies.ZLevelGeneralization(index.getKind(e), ZLevelEnemies);
+            out[3 * count + 1] = index.getMapX(e) - mario.mapX;
+            out[3 * count + 2] = index.getMapY(e) - mario.mapY;
+        }
+        count++;
+    }
+    return count;
+}
+
+/**
+ * Looks up the sprites inside the receptive field with its upper left cell at (x0, y0) into
+ * <code>visibleSprites</code>.
+ *
+ * @return number of entries of the sprite index found
+ */
+private int queryVisibleSprites(final int x0, final int y0)
+{
+    final SpriteIndex index = levelScene.getSpriteIndex();
+    if (visibleSprites.length < index.size())
+        visibleSprites = new int[Math.max(index.size(), visibleSprites.length * 2)];
+    return index.query(x0, y0, receptiveFieldWidth, receptiveFieldHeight, visibleSprites);
 }
 
 public int[] getSerializedLevelSceneObservationZ(int ZLevelScene)
@@ -646,32 +897,32 @@ private void computeEvaluationInfo()
 //        evaluationInfo.agentType = agent.getClass().getSimpleName();
 //        evaluationInfo.agentName = agent.getName();
     evaluationInfo.marioStatus = levelScene.getMarioStatus();
-    evaluationInfo.flowersDevoured = Mario.flowersDevoured;
+    evaluationInfo.flowersDevoured = levelScene.mario.flowersDevoured;
     evaluationInfo.distancePassedPhys = (int) levelScene.mario.x;
     evaluationInfo.distancePassedCells = levelScene.mario.mapX;
 //     evaluationInfo.totalLengthOfLevelCells = levelScene.level.getWidthCells();
 //     evaluationInfo.totalLengthOfLevelPhys = levelScene.level.getWidthPhys();
     evaluationInfo.timeSpent = levelScene.getTimeSpent();
     evaluationInfo.timeLeft = levelScene.getTimeLeft();
-    evaluationInfo.coinsGained = Mario.coins;
+    evaluationInfo.coinsGained = levelScene.mario.coins;
     evaluationInfo.totalNumberOfCoins = levelScene.level.counters.coinsCount;
     evaluationInfo.totalNumberOfHiddenBlocks = levelScene.level.counters.hiddenBlocksCount;
     evaluationInfo.totalNumberOfFlowers = levelScene.level.counters.flowers;
     evaluationInfo.totalNumberOfMushrooms = levelScene.level.counters.mushrooms;
     evaluationInfo.totalNumberOfCreatures = levelScene.level.counters.creatures;
     evaluationInfo.marioMode = levelScene.getMarioMode();
-    evaluationInfo.mushroomsDevoured = Mario.mushroomsDevoured;
+    evaluationInfo.mushroomsDevoured = levelScene.mario.mushroomsDevoured;
     evaluationInfo.killsTotal = levelScene.getKillsTotal();
     evaluationInfo.killsByStomp = levelScene.getKillsByStomp();
     evaluationInfo.killsByFire = levelScene.getKillsByFire();
     evaluationInfo.killsByShell = levelScene.getKillsByShell();
-    evaluationInfo.hiddenBlocksFound = Mario.hiddenBlocksFound;
-    evaluationInfo.collisionsWithCreatures = Mario.collisionsWithCreatures;
+    evaluationInfo.hiddenBlocksFound = levelScene.mario.hiddenBlocksFound;
+    evaluationInfo.collisionsWithCreatures = levelScene.mario.collisionsWithCreatures;
     evaluationInfo.Memo = levelScene.memo;
     evaluationInfo.levelLength = levelScene.level.length;
     evaluationInfo.marioTraceFileName = marioTraceFile;
-    evaluationInfo.marioTrace = levelScene.level.marioTrace;
-    evaluationInfo.greenMushroomsDevoured = Mario.greenMushroomsDevoured;
+    evaluationInfo.marioTrace = levelScene.level.getMarioTrace();
+    evaluationInfo.greenMushroomsDevoured = levelScene.mario.greenMushroomsDevoured;
     evaluationInfo.bytecodeInstructions = PunctualJudge.getCounter();
 }
 
@@ -686,6 +937,53 @@ public int getIntermediateReward()
     return levelScene.getBonusPoints();
 }
 
+public int[] step(boolean[][] actions, int frameSkip)
+{
+    if (frameSkip < 1)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : frameSkip must be at least 1, got " + frameSkip);
+    final int recordSize = getStepRecordSize();
+    if (stepRecords == null || stepRecords.length != actions.length * recordSize)
+        stepRecords = new int[actions.length * recordSize];
+
+    for (int i = 0, offset = 0; i < actions.length; i++, offset += recordSize)
+    {
+        final int reward = repeatAction(actions[i], frameSkip);
+        serializeStepObservation(stepRecords, offset);
+        stepRecords[offset + recordSize - 1] = reward;
+    }
+    return stepRecords;
+}
+
+/**
+ * Holds the action for <code>frameSkip</code> ticks, stopping early at the end of the level.
+ *
+ * @return intermediate reward gained meanwhile
+ */
+int repeatAction(boolean[] action, int frameSkip)
+{
+    final int bonusPoints = levelScene.getBonusPoints();
+    for (int t = 0; t < frameSkip && !levelScene.isLevelFinished(); t++)
+    {
+        // one action per tick, so that recordings stay replayable
+        performAction(action);
+        tick();
+    }
+    return levelScene.getBonusPoints() - bonusPoints;
+}
+
+/**
+ * Writes the full observation at the Z levels of the options, see {@link #step(boolean[][], int)}.
+ */
+void serializeStepObservation(int[] obs, int offset)
+{
+    serializeFullObservationZZ(ZLevelScene, ZLevelEnemies, obs, offset);
+}
+
+public int getStepRecordSize()
+{
+    return receptiveFieldHeight * receptiveFieldWidth * 2 + 11 + 1;
+}
+
 public int[] getMarioEgoPos()
 {
     return marioEgoPos;
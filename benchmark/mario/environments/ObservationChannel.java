@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.idsia.benchmark.mario.environments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Observations published in a direct or memory-mapped buffer, so that a learner in another process on
+ * the same host can read them in place instead of receiving copies. All values are in the native byte
+ * order of the host. Layout, in bytes:
+ * <pre>
+ *  0  int   MAGIC (0x4d41524f)
+ *  4  int   VERSION (1)
+ *  8  int   receptive field width
+ * 12  int   receptive field height
+ * 16  int   Mario ego row
+ * 20  int   Mario ego column
+ * 24  int   number n of observation ints, 2 * width * height + 11
+ * 28  int   Z levels of the level scene and of the enemies, as zs | ze &lt;&lt; 16
+ * 32  long  sequence: odd while an observation is written, even once it is complete
+ * 40  int   tick of the observation
+ * 44  int   intermediate reward so far
+ * 48  int[n] observation in the layout of {@link Environment#getSerializedFullObservationZZ}
+ * </pre>
+ * A reader reads the sequence, skips odd values, copies what it needs, and accepts the copy if the
+ * sequence is still the same afterwards. The header is complete once MAGIC shows; it is written last.
+ */
+
+public final class ObservationChannel
+{
+public static final int MAGIC = 0x4d41524f;
+public static final int VERSION = 1;
+public static final int HEADER_SIZE = 48;
+public static final int SEQUENCE_OFFSET = 32;
+
+private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+private final ByteBuffer buffer;
+private final IntBuffer observation;
+private long sequence;
+
+private ObservationChannel(final ByteBuffer buffer)
+{
+    this.buffer = buffer.order(ByteOrder.nativeOrder());
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : not an observation channel of version " + VERSION);
+    this.sequence = (long) LONGS.getAcquire(buffer, SEQUENCE_OFFSET);
+    buffer.position(HEADER_SIZE);
+    this.observation = buffer.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+    buffer.position(0);
+}
+
+/**
+ * @return size in bytes of a channel for the receptive field
+ */
+public static int size(final int width, final int height)
+{
+    return HEADER_SIZE + 4 * (2 * width * height + 11);
+}
+
+/**
+ * @return channel in a direct buffer of this process
+ */
+public static ObservationChannel allocateDirect(final int width, final int height)
+{
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(size(width, height));
+    initialize(buffer, width, height);
+    return new ObservationChannel(buffer);
+}
+
+/**
+ * Maps a file as channel for the writing side, e.g. under /dev/shm, creating it or resizing it as needed and
+ * replacing whatever it held. Readers attach with {@link #open(File)}.
+ */
+public static ObservationChannel map(final File file, final int width, final int height) throws IOException
+{
+    final ByteBuffer buffer = mapFile(file, size(width, height), true);
+    initialize(buffer, width, height);
+    return new ObservationChannel(buffer);
+}
+
+/**
+ * Attaches to a channel mapped by the writing side, without changing it, waiting for the file to appear
+ * and for its header to be complete, however long it takes.
+ */
+public static ObservationChannel open(final File file) throws IOException
+{
+    return open(file, Long.MAX_VALUE);
+}
+
+/**
+ * Attaches to a channel mapped by the writing side, without changing it, waiting for the file to appear
+ * and for its header to be complete.
+ *
+ * @param timeout milliseconds to wait at most
+ * @throws IOException if no channel is complete in time, or the wait is interrupted
+ */
+public static ObservationChannel open(final File file, final long timeout) throws IOException
+{
+    final long start = System.currentTimeMillis();
+    ByteBuffer header = null;
+    while (true)
+    {
+        if (header == null && file.length() >= HEADER_SIZE)
+            header = mapFile(file, HEADER_SIZE, false).order(ByteOrder.nativeOrder());
+        if (header != null && (int) INTS.getAcquire(header, 0) == MAGIC)
+            break;
+        if (System.currentTimeMillis() - start > timeout)
+            throw new IOException("[Mario AI EXCEPTION] : no observation channel was mapped in " + file + " within " + timeout + " ms");
+        try
+        {
+            Thread.sleep(1);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[Mario AI EXCEPTION] : interrupted while waiting for observation channel " + file);
+        }
+    }
+    // map sizes the file before it initializes the header
+    return new ObservationChannel(mapFile(file, size(header.getInt(8), header.getInt(12)), false));
+}
+
+private static ByteBuffer mapFile(final File file, final int size, final boolean create) throws IOException
+{
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try
+    {
+        if (create)
+            raf.setLength(size);
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } finally
+    {
+        raf.close();
+    }
+}
+
+private static void initialize(final ByteBuffer buffer, final int width, final int height)
+{
+    buffer.order(ByteOrder.nativeOrder());
+    // a reader waiting in open must not take what a reused file held before for the new channel
+    INTS.setRelease(buffer, 0, 0);
+    LONGS.setRelease(buffer, SEQUENCE_OFFSET, 0L);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, width);
+    buffer.putInt(12, height);
+    buffer.putInt(24, 2 * width * height + 11);
+    VarHandle.releaseFence();
+    buffer.putInt(0, MAGIC);
+}
+
+/**
+ * Publishes the current observation of the environment, whose receptive field must be the one of the
+ * channel. There must be only one writer per channel.
+ */
+public void write(final MarioEnvironment environment, final int ZLevelScene, final int ZLevelEnemies)
+{
+    if (environment.getReceptiveFieldWidth() != buffer.getInt(8) || environment.getReceptiveFieldHeight() != buffer.getInt(12))
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : receptive field of the environment does not match the channel");
+
+    LONGS.setVolatile(buffer, SEQUENCE_OFFSET, ++sequence);
+    VarHandle.storeStoreFence();
+    buffer.putInt(16, environment.getMarioEgoPos()[0]);
+    buffer.putInt(20, environment.getMarioEgoPos()[1]);
+    buffer.putInt(28, ZLevelScene | ZLevelEnemies << 16);
+    buffer.putInt(40, environment.getTick());
+    buffer.putInt(44, environment.getIntermediateReward());
+    environment.serializeFullObservationZZ(ZLevelScene, ZLevelEnemies, observation, 0);
+    LONGS.setRelease(buffer, SEQUENCE_OFFSET, ++sequence);
+}
+
+/**
+ * Reads the last complete observation, following the protocol of external readers.
+ *
+ * @param obs receives the observation ints
+ * @return sequence number of the observation read
+ */
+public long read(final int[] obs)
+{
+    while (true)
+    {
+        final long before = (long) LONGS.getAcquire(buffer, SEQUENCE_OFFSET);
+        if ((before & 1) != 0)
+        {
+            Thread.onSpinWait();
+            continue;
+        }
+        observation.duplicate().position(0).get(obs, 0, buffer.getInt(24));
+        VarHandle.loadLoadFence();
+        if ((long) LONGS.getVolatile(buffer, SEQUENCE_OFFSET) == before)
+            return before;
+    }
+}
+
+/**
+ * @return the whole channel, header included; its position and limit are not used by the channel
+ */
+public ByteBuffer getByteBuffer()
+{
+    return buffer;
+}
+}
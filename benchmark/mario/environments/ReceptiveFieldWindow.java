@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.idsia.benchmark.mario.environments;
+
+import ch.idsia.benchmark.mario.engine.GeneralizerLevelScene;
+import ch.idsia.benchmark.mario.engine.level.Level;
+
+import java.nio.IntBuffer;
+
+/**
+ * Generalized level scene around Mario, kept in a ring buffer between observations. When the window
+ * moves only the newly exposed columns and rows are read from the level, and cells changed through
+ * {@link Level#setBlock} meanwhile are patched, so updating costs time proportional to the displacement
+ * rather than to the size of the window.
+ */
+
+final class ReceptiveFieldWindow
+{
+private final int width;
+private final int height;
+private final int[] cells;
+
+private Level level;
+private int ZLevel;
+private long blockChangeCount;
+// level cell of the top left corner, and its position in the ring buffer
+private int x0, y0;
+private int ringX, ringY;
+
+ReceptiveFieldWindow(final int width, final int height)
+{
+    this.width = width;
+    this.height = height;
+    this.cells = new int[width * height];
+}
+
+/**
+ * Moves the window so that its top left corner is at level cell (x0, y0).
+ */
+void update(final Level level, final int x0, final int y0, final int ZLevel)
+{
+    final int dx = x0 - this.x0;
+    final int dy = y0 - this.y0;
+    if (level != this.level || ZLevel != this.ZLevel || level.getBlockChangeCount() - blockChangeCount > Level.BLOCK_CHANGE_LOG
+            || Math.abs(dx) >= width || Math.abs(dy) >= height)
+    {
+        rebuild(level, x0, y0, ZLevel);
+        return;
+    }
+
+    if (dx > 0)
+    {
+        ringX = (ringX + dx) % width;
+        this.x0 = x0;
+        for (int x = x0 + width - dx; x < x0 + width; x++)
+            fillColumn(x);
+    } else if (dx < 0)
+    {
+        ringX = (ringX + dx + width) % width;
+        this.x0 = x0;
+        for (int x = x0; x < x0 - dx; x++)
+            fillColumn(x);
+    }
+    if (dy > 0)
+    {
+        ringY = (ringY + dy) % height;
+        this.y0 = y0;
+        for (int y = y0 + height - dy; y < y0 + height; y++)
+            fillRow(y);
+    } else if (dy < 0)
+    {
+        ringY = (ringY + dy + height) % height;
+        this.y0 = y0;
+        for (int y = y0; y < y0 - dy; y++)
+            fillRow(y);
+    }
+
+    for (final long changes = level.getBlockChangeCount(); blockChangeCount < changes; blockChangeCount++)
+    {
+        final int cell = level.getChangedCell(blockChangeCount);
+        final int x = cell / level.height;
+        final int y = cell % level.height;
+        if (x >= x0 && x < x0 + width && y >= y0 && y < y0 + height)
+            cells[index(x, y)] = generalize(x, y);
+    }
+}
+
+/**
+ * Copies the window row by row, as in the level scene part of the serialized observation.
+ */
+void copyTo(final int[] obs, final int offset)
+{
+    for (int row = 0, o = offset; row < height; row++, o += width)
+    {
+        final int r = ((ringY + row) % height) * width;
+        System.arraycopy(cells, r + ringX, obs, o, width - ringX);
+        System.arraycopy(cells, r, obs, o + width - ringX, ringX);
+    }
+}
+
+/**
+ * As {@link #copyTo(int[], int)}, into a buffer at absolute positions; its position is not used.
+ */
+void copyTo(final IntBuffer obs, final int offset)
+{
+    for (int row = 0, o = offset; row < height; row++, o += width)
+    {
+        final int r = ((ringY + row) % height) * width;
+        obs.put(o, cells, r + ringX, width - ringX);
+        obs.put(o + width - ringX, cells, r, ringX);
+    }
+}
+
+private void rebuild(final Level level, final int x0, final int y0, final int ZLevel)
+{
+    this.level = level;
+    this.ZLevel = ZLevel;
+    this.blockChangeCount = level.getBlockChangeCount();
+    this.x0 = x0;
+    this.y0 = y0;
+    ringX = 0;
+    ringY = 0;
+    for (int x = x0; x < x0 + width; x++)
+        fillColumn(x);
+}
+
+private void fillColumn(final int x)
+{
+    for (int y = y0; y < y0 + height; y++)
+        cells[index(x, y)] = generalize(x, y);
+}
+
+private void fillRow(final int y)
+{
+    for (int x = x0; x < x0 + width; x++)
+        cells[index(x, y)] = generalize(x, y);
+}
+
+private int index(final int x, final int y)
+{
+    return ((ringY + y - y0) % height) * width + (ringX + x - x0) % width;
+}
+
+private int generalize(final int x, final int y)
+{
+    if (x < 0 || x >= level.length || y < 0 || y >= level.height)
+        return 0;
+    return GeneralizerLevelScene.ZLevelGeneralization(level.getBlocks()[x * level.height + y], ZLevel);
+}
+}
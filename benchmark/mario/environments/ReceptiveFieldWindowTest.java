@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  Neither the name of the Mario AI nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.environments;
+
+import org.junit.Test;
+
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Plays the same worlds in an environment that rebuilds the observation on every call and in one that keeps it
+ * in a {@link ReceptiveFieldWindow}, and checks that both serialize the same observations.
+ */
+public class ReceptiveFieldWindowTest
+{
+private static final int TICKS = 2500;
+
+private static String options(final int seed, final int width)
+{
+    // a large Mario breaks bricks, which the window has to pick up as changed blocks
+    return "-ls " + seed + " -ld " + (2 + seed % 4) + " -lt " + seed % 3 + " -rfw " + width + " -rfh " + (width / 2 + 3)
+            + " -i on -mm 2 -vis off";
+}
+
+private static void assertSameObservations(final int width)
+{
+    final MarioEnvironment rebuilt = MarioEnvironment.newInstance();
+    final MarioEnvironment incremental = MarioEnvironment.newInstance();
+    incremental.setIncrementalObservation(true);
+    // the second level comes after a reset of the same environments
+    for (int seed = 0; seed < 2; seed++)
+    {
+        rebuilt.reset(options(seed, width));
+        incremental.reset(options(seed, width));
+        final int n = 2 * incremental.getReceptiveFieldWidth() * incremental.getReceptiveFieldHeight() + 11;
+        final int[] expected = new int[n];
+        final int[] actual = new int[n];
+        final IntBuffer buffer = IntBuffer.allocate(n + 3);
+        final boolean[] action = new boolean[Environment.numberOfKeys];
+        for (int t = 0; t < TICKS && !rebuilt.isLevelFinished(); t++)
+        {
+            // runs right, now and then back left, jumping and ducking in turns
+            action[Environment.MARIO_KEY_RIGHT] = t % 20 < 9;
+            action[Environment.MARIO_KEY_LEFT] = t % 400 >= 360;
+            action[Environment.MARIO_KEY_JUMP] = t / 150 % 4 != 3;
+            action[Environment.MARIO_KEY_DOWN] = !action[Environment.MARIO_KEY_JUMP];
+            action[Environment.MARIO_KEY_SPEED] = true;
+            rebuilt.performAction(action);
+            rebuilt.tick();
+            incremental.performAction(action);
+            incremental.tick();
+
+            final int ZLevelScene = t / 300 % 3;
+            final String message = options(seed, width) + ", tick " + t;
+            rebuilt.serializeFullObservationZZ(ZLevelScene, 0, expected, 0);
+            incremental.serializeFullObservationZZ(ZLevelScene, 0, actual, 0);
+            assertArrayEquals(message, expected, actual);
+            incremental.serializeFullObservationZZ(ZLevelScene, 0, buffer, 3);
+            buffer.position(3);
+            buffer.get(actual);
+            assertArrayEquals(message, expected, actual);
+        }
+    }
+}
+
+@Test
+public void testDefaultField()
+{
+    assertSameObservations(19);
+}
+
+@Test
+public void testSmallField()
+{
+    assertSameObservations(7);
+}
+
+@Test
+public void testLargeField()
+{
+    assertSameObservations(41);
+}
+
+@Test
+public void testFieldWiderThanTheScreen()
+{
+    assertSameObservations(80);
+}
+}
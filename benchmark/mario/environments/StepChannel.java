@@ -0,0 +1,353 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.idsia.benchmark.mario.environments;
+
+import ch.idsia.tools.MarioAIOptions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Step loop between an environment and an agent in another process, over a shared memory region
+ * (e.g. a file under /dev/shm) instead of sockets. Commands travel in a single-producer single-consumer
+ * ring of action slots, observations in a ring of observation slots; each ring is synchronized by a
+ * pair of sequence counters, written by one side only, so neither side takes a lock or makes a system
+ * call. Waiting sides spin for a while and then yield, so the lowest latency needs a core per side.
+ * <p/>
+ * Layout, in bytes, all values in the native byte order of the host:
+ * <pre>
+ *   0  int   MAGIC (0x4d535450)
+ *   4  int   VERSION (1)
+ *   8  int   number of slots per ring, a power of two
+ *  12  int   number n of observation ints, 2 * width * height + 11
+ *  16  int   receptive field width
+ *  20  int   receptive field height
+ *  24  int   Z levels of the level scene and of the enemies, as zs | ze &lt;&lt; 16
+ *  64  long  commands written, by the agent
+ * 128  long  commands read, by the environment
+ * 192  long  observations written, by the environment
+ * 256  long  observations read, by the agent
+ * 320  action slots, 8 bytes each: keys 0-5 (0 or 1), command, frame skip
+ *      observation slots, 16 + 4 * n bytes each: reward, tick, level finished (0 or 1), unused,
+ *      then the observation in the layout of {@link Environment#getSerializedFullObservationZZ}
+ * </pre>
+ * Command number i is in action slot i % slots. A producer fills the slot and then publishes it by
+ * incrementing its written counter (release); a consumer reads the counter (acquire), the slot, and
+ * then increments its read counter. Every step and reset command is answered by one observation.
+ * <p/>
+ * An agent may have at most <code>slots</code> commands waiting for their observation. With more, both
+ * rings could fill up with the environment waiting for the agent to read and the agent waiting for the
+ * environment to take commands, so the agent side refuses to send them.
+ */
+
+public final class StepChannel
+{
+public static final int MAGIC = 0x4d535450;
+public static final int VERSION = 1;
+
+public static final byte COMMAND_STEP = 0;
+public static final byte COMMAND_RESET = 1;
+public static final byte COMMAND_CLOSE = 2;
+
+private static final int COMMANDS_WRITTEN = 64;
+private static final int COMMANDS_READ = 128;
+private static final int OBSERVATIONS_WRITTEN = 192;
+private static final int OBSERVATIONS_READ = 256;
+private static final int SLOTS = 320;
+private static final int ACTION_SLOT_SIZE = 8;
+private static final int OBSERVATION_HEADER_SIZE = 16;
+
+private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+private final ByteBuffer buffer;
+private final int slots;
+private final int n;
+private final int observationSlots;
+private final int observationSlotSize;
+private final boolean[] keys = new boolean[Environment.numberOfKeys];
+// the whole channel as ints, int i at byte 4 * i; only absolute positions are used, so both sides may share it
+private final IntBuffer ints;
+private boolean lastLevelFinished;
+
+private StepChannel(final ByteBuffer buffer)
+{
+    this.buffer = buffer.order(ByteOrder.nativeOrder());
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : not a step channel of version " + VERSION);
+    this.slots = buffer.getInt(8);
+    this.n = buffer.getInt(12);
+    this.observationSlots = SLOTS + slots * ACTION_SLOT_SIZE;
+    this.observationSlotSize = OBSERVATION_HEADER_SIZE + 4 * n;
+    this.ints = buffer.duplicate().order(ByteOrder.nativeOrder()).position(0).asIntBuffer();
+}
+
+/**
+ * @return size in bytes of a channel
+ */
+public static int size(final int slots, final int width, final int height)
+{
+    return SLOTS + slots * (ACTION_SLOT_SIZE + OBSERVATION_HEADER_SIZE + 4 * (2 * width * height + 11));
+}
+
+/**
+ * Creates a channel in a direct buffer, for both sides in this process.
+ */
+public static StepChannel allocateDirect(final int slots, final int width, final int height, final int ZLevelScene, final int ZLevelEnemies)
+{
+    final ByteBuffer buffer = ByteBuffer.allocateDirect(size(slots, width, height));
+    initialize(buffer, slots, width, height, ZLevelScene, ZLevelEnemies);
+    return new StepChannel(buffer);
+}
+
+/**
+ * Creates a channel in a file, e.g. under /dev/shm, replacing whatever the file held. The other side
+ * attaches with {@link #open(File)}.
+ */
+public static StepChannel create(final File file, final int slots, final int width, final int height, final int ZLevelScene, final int ZLevelEnemies) throws IOException
+{
+    final ByteBuffer buffer = map(file, size(slots, width, height), true);
+    initialize(buffer, slots, width, height, ZLevelScene, ZLevelEnemies);
+    return new StepChannel(buffer);
+}
+
+/**
+ * Attaches to a channel created by the other side, waiting for the file to appear and for its creation
+ * to complete, however long it takes.
+ */
+public static StepChannel open(final File file) throws IOException
+{
+    return open(file, Long.MAX_VALUE);
+}
+
+/**
+ * Attaches to a channel created by the other side, waiting for the file to appear and for its creation
+ * to complete.
+ *
+ * @param timeout milliseconds to wait at most
+ * @throws IOException if no channel is complete in time, or the wait is interrupted
+ */
+public static StepChannel open(final File file, final long timeout) throws IOException
+{
+    final long start = System.currentTimeMillis();
+    ByteBuffer header = null;
+    while (true)
+    {
+        if (header == null && file.length() >= SLOTS)
+            header = map(file, SLOTS, false).order(ByteOrder.nativeOrder());
+        // the header is complete once MAGIC shows, which initialize writes last with release semantics
+        if (header != null && (int) INTS.getAcquire(header, 0) == MAGIC)
+            break;
+        if (System.currentTimeMillis() - start > timeout)
+            throw new IOException("[Mario AI EXCEPTION] : no step channel was created in " + file + " within " + timeout + " ms");
+        try
+        {
+            Thread.sleep(1);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("[Mario AI EXCEPTION] : interrupted while waiting for step channel " + file);
+        }
+    }
+    // create sizes the file before it initializes the header
+    return new StepChannel(map(file, size(header.getInt(8), header.getInt(16), header.getInt(20)), false));
+}
+
+private static ByteBuffer map(final File file, final int size, final boolean create) throws IOException
+{
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try
+    {
+        if (create)
+            raf.setLength(size);
+        return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    } finally
+    {
+        raf.close();
+    }
+}
+
+private static void initialize(final ByteBuffer buffer, final int slots, final int width, final int height, final int ZLevelScene, final int ZLevelEnemies)
+{
+    if (slots <= 0 || (slots & (slots - 1)) != 0)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : number of slots must be a power of two, got " + slots);
+    buffer.order(ByteOrder.nativeOrder());
+    // a reader waiting in open must not take what a reused file held before for the new channel
+    INTS.setRelease(buffer, 0, 0);
+    for (int i = COMMANDS_WRITTEN; i <= OBSERVATIONS_READ; i += 64)
+        LONGS.setRelease(buffer, i, 0L);
+    buffer.putInt(4, VERSION);
+    buffer.putInt(8, slots);
+    buffer.putInt(12, 2 * width * height + 11);
+    buffer.putInt(16, width);
+    buffer.putInt(20, height);
+    buffer.putInt(24, ZLevelScene | ZLevelEnemies << 16);
+    VarHandle.releaseFence();
+    buffer.putInt(0, MAGIC);
+}
+
+// environment side
+
+/**
+ * Serves commands until the agent sends {@link #COMMAND_CLOSE}. The environment must have been reset
+ * with a receptive field of the size of the channel.
+ *
+ * @param options options a reset command resets the environment with
+ */
+public void serve(final MarioEnvironment environment, final MarioAIOptions options)
+{
+    if (2 * environment.getReceptiveFieldWidth() * environment.getReceptiveFieldHeight() + 11 != n)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : receptive field of the environment does not match the channel");
+    final int ZLevels = buffer.getInt(24);
+    long commands = (long) LONGS.getAcquire(buffer, COMMANDS_READ);
+    while (true)
+    {
+        for (int spins = 0; (long) LONGS.getAcquire(buffer, COMMANDS_WRITTEN) == commands; spins++)
+            backOff(spins);
+        final int slot = SLOTS + (int) (commands & (slots - 1)) * ACTION_SLOT_SIZE;
+        for (int k = 0; k < keys.length; k++)
+            keys[k] = buffer.get(slot + k) != 0;
+        final byte command = buffer.get(slot + 6);
+        final int frameSkip = Math.max(1, buffer.get(slot + 7));
+        LONGS.setRelease(buffer, COMMANDS_READ, ++commands);
+
+        int reward = 0;
+        if (command == COMMAND_CLOSE)
+            return;
+        else if (command == COMMAND_RESET)
+            environment.reset(options);
+        else
+            reward = environment.repeatAction(keys, frameSkip);
+
+        final long observations = (long) LONGS.getAcquire(buffer, OBSERVATIONS_WRITTEN);
+        for (int spins = 0; observations - (long) LONGS.getAcquire(buffer, OBSERVATIONS_READ) >= slots; spins++)
+            backOff(spins);
+        final int o = observationSlots + (int) (observations & (slots - 1)) * observationSlotSize;
+        buffer.putInt(o, reward);
+        buffer.putInt(o + 4, environment.getTick());
+        buffer.putInt(o + 8, environment.isLevelFinished() ? 1 : 0);
+        environment.serializeFullObservationZZ(ZLevels & 0xffff, ZLevels >>> 16, ints, (o + OBSERVATION_HEADER_SIZE) / 4);
+        LONGS.setRelease(buffer, OBSERVATIONS_WRITTEN, observations + 1);
+    }
+}
+
+private static void backOff(final int spins)
+{
+    if (spins < 1000)
+        Thread.onSpinWait();
+    else
+        Thread.yield();
+}
+
+// agent side
+
+/**
+ * Queues a step: the keys are held for <code>frameSkip</code> ticks (1 to 127).
+ *
+ * @throws IllegalStateException if <code>slots</code> commands are already waiting for their observation
+ */
+public void sendAction(final boolean[] action, final int frameSkip)
+{
+    final int slot = nextActionSlot();
+    for (int k = 0; k < Environment.numberOfKeys; k++)
+        buffer.put(slot + k, (byte) (action[k] ? 1 : 0));
+    buffer.put(slot + 6, COMMAND_STEP);
+    buffer.put(slot + 7, (byte) frameSkip);
+    publishAction();
+}
+
+public void sendReset()
+{
+    sendCommand(COMMAND_RESET);
+}
+
+public void sendClose()
+{
+    sendCommand(COMMAND_CLOSE);
+}
+
+private void sendCommand(final byte command)
+{
+    final int slot = nextActionSlot();
+    buffer.put(slot + 6, command);
+    publishAction();
+}
+
+private int nextActionSlot()
+{
+    // both counters are written by this side; the environment has read at least the commands it answered,
+    // so with fewer than slots commands unanswered the action ring has room
+    final long commands = (long) LONGS.getAcquire(buffer, COMMANDS_WRITTEN);
+    if (commands - (long) LONGS.getAcquire(buffer, OBSERVATIONS_READ) >= slots)
+        throw new IllegalStateException("[Mario AI EXCEPTION] : " + slots + " commands are waiting for their observation, receive before sending more");
+    return SLOTS + (int) (commands & (slots - 1)) * ACTION_SLOT_SIZE;
+}
+
+private void publishAction()
+{
+    LONGS.setRelease(buffer, COMMANDS_WRITTEN, (long) LONGS.getAcquire(buffer, COMMANDS_WRITTEN) + 1);
+}
+
+/**
+ * Waits for the answer to the oldest unanswered command.
+ *
+ * @param obs receives the observation ints
+ * @return intermediate reward gained during the step
+ * @throws IllegalStateException if no command is waiting for its observation
+ */
+public int receive(final int[] obs)
+{
+    final long observations = (long) LONGS.getAcquire(buffer, OBSERVATIONS_READ);
+    if (observations == (long) LONGS.getAcquire(buffer, COMMANDS_WRITTEN))
+        throw new IllegalStateException("[Mario AI EXCEPTION] : no command is waiting for its observation");
+    for (int spins = 0; (long) LONGS.getAcquire(buffer, OBSERVATIONS_WRITTEN) == observations; spins++)
+        backOff(spins);
+    final int o = observationSlots + (int) (observations & (slots - 1)) * observationSlotSize;
+    final int reward = buffer.getInt(o);
+    lastLevelFinished = buffer.getInt(o + 8) != 0;
+    ints.get((o + OBSERVATION_HEADER_SIZE) / 4, obs, 0, n);
+    LONGS.setRelease(buffer, OBSERVATIONS_READ, observations + 1);
+    return reward;
+}
+
+/**
+ * @return whether the level was finished in the observation last received
+ */
+public boolean isLastLevelFinished()
+{
+    return lastLevelFinished;
+}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package ch.idsia.benchmark.mario.environments;
+
+import ch.idsia.benchmark.mario.engine.SpriteIndex;
+import ch.idsia.benchmark.mario.engine.level.Level;
+import ch.idsia.benchmark.mario.engine.sprites.Mario;
+import ch.idsia.benchmark.mario.engine.sprites.Sprite;
+
+import java.util.Arrays;
+
+/**
+ * Receptive field as a stack of binary planes, one per channel of a configurable list, read straight from
+ * the level tiles, their behaviors and the sprite index. Unlike the Z level observations nothing is
+ * merged: a cell can be set in several planes, e.g. a question brick is also solid, and an enemy on a
+ * coin shows in both planes.
+ * <p/>
+ * Channels are named in a comma separated list:
+ * <ul>
+ * <li>solid, halfSolid (blocks only from above), coin, question, brick - level tiles</li>
+ * <li>goomba, koopa, spiky (each including the winged kind), flower, bulletBill, shell - enemies</li>
+ * <li>mario, mushroom (including the green one), fireFlower, fireball</li>
+ * </ul>
+ */
+
+final class TensorObservation
+{
+static final String[] CHANNEL_NAMES = {"solid", "halfSolid", "coin", "question", "brick",
+        "goomba", "koopa", "spiky", "flower", "bulletBill", "shell",
+        "mario", "mushroom", "fireFlower", "fireball"};
+
+static final String DEFAULT_CHANNELS = "solid,halfSolid,coin,question,brick,goomba,koopa,spiky,flower,bulletBill,shell,mario,mushroom,fireFlower,fireball";
+
+private static final int SOLID = 0;
+private static final int HALF_SOLID = 1;
+private static final int COIN = 2;
+private static final int QUESTION = 3;
+private static final int BRICK = 4;
+private static final int GOOMBA = 5;
+private static final int KOOPA = 6;
+private static final int SPIKY = 7;
+private static final int FLOWER = 8;
+private static final int BULLET_BILL = 9;
+private static final int SHELL = 10;
+private static final int MARIO = 11;
+private static final int MUSHROOM = 12;
+private static final int FIRE_FLOWER = 13;
+private static final int FIREBALL = 14;
+
+private final int channels;
+// bit c is set when the tile or sprite kind (& 0xff) shows in plane c
+private final int[] tileChannels = new int[256];
+private final int[] kindChannels = new int[256];
+// per cell mask of the planes it shows in, gathered before the planes are written
+private int[] cellChannels = new int[0];
+
+TensorObservation(final String spec)
+{
+    final String[] names = spec.split(",");
+    if (names.length > 32)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : at most 32 tensor channels are supported, got " + names.length);
+    channels = names.length;
+    final int[] ids = new int[channels];
+    for (int c = 0; c < channels; c++)
+    {
+        ids[c] = Arrays.asList(CHANNEL_NAMES).indexOf(names[c].trim());
+        if (ids[c] < 0)
+            throw new IllegalArgumentException("[Mario AI EXCEPTION] : unknown tensor channel '" + names[c].trim()
+                    + "'; known channels are " + DEFAULT_CHANNELS);
+        for (int d = 0; d < c; d++)
+            if (ids[d] == ids[c])
+                throw new IllegalArgumentException("[Mario AI EXCEPTION] : tensor channel '" + names[c].trim() + "' is listed twice");
+    }
+
+    for (int i = 0; i < 256; i++)
+        for (int c = 0; c < channels; c++)
+        {
+            if (showsTile(ids[c], (byte) i))
+                tileChannels[i] |= 1 << c;
+            if (showsKind(ids[c], (byte) i))
+                kindChannels[i] |= 1 << c;
+        }
+}
+
+private static boolean showsTile(final int channel, final byte tile)
+{
+    final int behavior = Level.TILE_BEHAVIORS[tile & 0xff];
+    switch (channel)
+    {
+        case SOLID:
+            return (behavior & Level.BIT_BLOCK_ALL) != 0;
+        case HALF_SOLID:
+            return (behavior & (Level.BIT_BLOCK_UPPER | Level.BIT_BLOCK_ALL)) == Level.BIT_BLOCK_UPPER;
+        case COIN:
+            return (behavior & Level.BIT_PICKUPABLE) != 0;
+        case QUESTION:
+            // as in GeneralizerLevelScene
+            return tile == 21 || tile == 22 || tile == 23;
+        case BRICK:
+            return tile == 16 || tile == 17 || tile == 18;
+        default:
+            return false;
+    }
+}
+
+private static boolean showsKind(final int channel, final byte kind)
+{
+    switch (channel)
+    {
+        case GOOMBA:
+            return kind == Sprite.KIND_GOOMBA || kind == Sprite.KIND_GOOMBA_WINGED;
+        case KOOPA:
+            return kind == Sprite.KIND_RED_KOOPA || kind == Sprite.KIND_RED_KOOPA_WINGED
+                    || kind == Sprite.KIND_GREEN_KOOPA || kind == Sprite.KIND_GREEN_KOOPA_WINGED;
+        case SPIKY:
+            return kind == Sprite.KIND_SPIKY || kind == Sprite.KIND_SPIKY_WINGED;
+        case FLOWER:
+            return kind == Sprite.KIND_ENEMY_FLOWER;
+        case BULLET_BILL:
+            return kind == Sprite.KIND_BULLET_BILL;
+        case SHELL:
+            return kind == Sprite.KIND_SHELL;
+        case MARIO:
+            return kind == Sprite.KIND_MARIO;
+        case MUSHROOM:
+            return kind == Sprite.KIND_MUSHROOM || kind == Sprite.KIND_GREEN_MUSHROOM;
+        case FIRE_FLOWER:
+            return kind == Sprite.KIND_FIRE_FLOWER;
+        case FIREBALL:
+            return kind == Sprite.KIND_FIREBALL;
+        default:
+            return false;
+    }
+}
+
+int getChannelCount()
+{
+    return channels;
+}
+
+/**
+ * Collects the planes of every cell of the field with its top left corner at level cell (x0, y0).
+ *
+ * @param entries sprite index entries inside the field, see {@link SpriteIndex#query}
+ */
+void gather(final Level level, final Mario mario, final SpriteIndex index, final int[] entries, final int count,
+            final int x0, final int y0, final int width, final int height)
+{
+    if (cellChannels.length != width * height)
+        cellChannels = new int[width * height];
+    // column by column, the order of the level cells
+    final byte[] blocks = level.getBlocks();
+    for (int col = 0, x = x0; col < width; col++, x++)
+    {
+        final boolean xInside = x >= 0 && x < level.length;
+        for (int row = 0, y = y0, cell = col; row < height; row++, y++, cell += width)
+            cellChannels[cell] = xInside && y >= 0 && y < level.height ? tileChannels[blocks[x * level.height + y] & 0xff] : 0;
+    }
+    for (int s = 0; s < count; s++)
+    {
+        final int e = entries[s];
+        cellChannels[(index.getMapY(e) - y0) * width + index.getMapX(e) - x0] |= kindChannels[index.getKind(e) & 0xff];
+    }
+    final int col = mario.mapX - x0;
+    final int row = mario.mapY - y0;
+    if (col >= 0 && col < width && row >= 0 && row < height)
+        cellChannels[row * width + col] |= kindChannels[Sprite.KIND_MARIO & 0xff];
+}
+
+/**
+ * Writes the gathered planes channel-major, row by row: 1 where a cell shows in the plane, 0 elsewhere.
+ *
+ * @param obs room for <code>channels * width * height</code> floats from <code>offset</code> on
+ */
+void writeFloats(final float[] obs, final int offset)
+{
+    final int plane = cellChannels.length;
+    Arrays.fill(obs, offset, offset + channels * plane, 0);
+    for (int cell = 0; cell < plane; cell++)
+        for (int mask = cellChannels[cell]; mask != 0; mask &= mask - 1)
+            obs[offset + Integer.numberOfTrailingZeros(mask) * plane + cell] = 1;
+}
+
+/**
+ * Writes the gathered planes in the order of {@link #writeFloats}, one bit per value, starting at the
+ * lowest bit of <code>obs[offset]</code>.
+ *
+ * @param obs room for <code>(channels * width * height + 63) / 64</code> longs from <code>offset</code> on
+ */
+void writeBits(final long[] obs, final int offset)
+{
+    final int plane = cellChannels.length;
+    Arrays.fill(obs, offset, offset + (channels * plane + 63) / 64, 0);
+    for (int cell = 0; cell < plane; cell++)
+        for (int mask = cellChannels[cell]; mask != 0; mask &= mask - 1)
+        {
+            final int bit = Integer.numberOfTrailingZeros(mask) * plane + cell;
+            obs[offset + (bit >>> 6)] |= 1L << bit;
+        }
+}
+}
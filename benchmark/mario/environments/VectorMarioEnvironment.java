@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package ch.idsia.benchmark.mario.environments;
+
+import ch.idsia.tools.MarioAIOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * N independent worlds without visualization stepped in lockstep on a work-stealing pool, for training on batches
+ * of episodes. Results of every step are written into arrays allocated once, so that they can be fed
+ * to batched inference as they are:
+ * <ul>
+ * <li>{@link #getObservations()}: world <code>i</code> at offset <code>i * getObservationSize()</code>, in the
+ * layout of {@link Environment#getSerializedFullObservationZZ} at the Z levels of the world's options;</li>
+ * <li>{@link #getRewards()}: intermediate reward gained during the step;</li>
+ * <li>{@link #getDones()}: whether the episode ended during the step;</li>
+ * <li>{@link #getStatuses()}: Mario status at the end of the step, before any reset.</li>
+ * </ul>
+ * A world whose episode ended is reset with its options right away, so its observation is already the
+ * first one of the next episode.
+ * <p/>
+ * Worlds play with all sprites unless they are created headless, see
+ * {@link #VectorMarioEnvironment(MarioAIOptions[], int, boolean)}.
+ */
+
+public final class VectorMarioEnvironment
+{
+private final MarioEnvironment[] worlds;
+private final MarioAIOptions[] options;
+private final List<Callable<Void>> steps;
+private final ForkJoinPool pool;
+
+private final int observationSize;
+private final int[] observations;
+private final int[] rewards;
+private final boolean[] dones;
+private final int[] statuses;
+
+private boolean[][] actions;
+private int frameSkip;
+
+public VectorMarioEnvironment(final MarioAIOptions[] options)
+{
+    this(options, Runtime.getRuntime().availableProcessors());
+}
+
+/**
+ * @param options     one set of options per world; all worlds must share the receptive field size
+ * @param parallelism number of threads stepping the worlds
+ */
+public VectorMarioEnvironment(final MarioAIOptions[] options, final int parallelism)
+{
+    this(options, parallelism, false);
+}
+
+/**
+ * @param options     one set of options per world; all worlds must share the receptive field size
+ * @param parallelism number of threads stepping the worlds
+ * @param headless    whether the worlds skip cosmetic sprites, which is faster but can change the enemy
+ *                    observations, see {@link MarioEnvironment#setHeadless(boolean)}
+ */
+public VectorMarioEnvironment(final MarioAIOptions[] options, final int parallelism, final boolean headless)
+{
+    final int n = options.length;
+    this.worlds = new MarioEnvironment[n];
+    this.options = new MarioAIOptions[n];
+    this.steps = new ArrayList<Callable<Void>>(n);
+    this.pool = new ForkJoinPool(parallelism);
+
+    for (int i = 0; i < n; i++)
+    {
+        worlds[i] = MarioEnvironment.newInstance();
+        worlds[i].setHeadless(headless);
+        setOptions(i, options[i]);
+        worlds[i].reset(this.options[i]);
+        final int world = i;
+        steps.add(new Callable<Void>()
+        {
+            public Void call()
+            {
+                stepWorld(world);
+                return null;
+            }
+        });
+    }
+
+    observationSize = n > 0 ? worlds[0].getStepRecordSize() - 1 : 0;
+    for (int i = 1; i < n; i++)
+        if (worlds[i].getStepRecordSize() - 1 != observationSize)
+            throw new IllegalArgumentException("[Mario AI EXCEPTION] : world " + i + " has a receptive field of another size");
+
+    observations = new int[n * observationSize];
+    rewards = new int[n];
+    dones = new boolean[n];
+    statuses = new int[n];
+    for (int i = 0; i < n; i++)
+    {
+        worlds[i].serializeStepObservation(observations, i * observationSize);
+        statuses[i] = worlds[i].getMarioStatus();
+    }
+}
+
+/**
+ * Sets the options a world is reset with when its current episode ends, e.g. to move on to another
+ * level seed. The receptive field size must stay the same.
+ */
+public void setOptions(final int world, final MarioAIOptions options)
+{
+    // private copy: resetting an environment writes into its options
+    final MarioAIOptions copy = new MarioAIOptions(options.asString());
+    copy.setVisualization(false);
+    this.options[world] = copy;
+}
+
+/**
+ * Steps all worlds once, every world holding its action for <code>frameSkip</code> ticks, and blocks until
+ * all of them are done.
+ *
+ * @param actions   one array of {@link Environment#numberOfKeys} keys per world
+ * @param frameSkip number of ticks every action is repeated for, at least 1
+ */
+public void step(final boolean[][] actions, final int frameSkip)
+{
+    if (actions.length != worlds.length)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : expected " + worlds.length + " actions, got " + actions.length);
+    if (frameSkip < 1)
+        throw new IllegalArgumentException("[Mario AI EXCEPTION] : frameSkip must be at least 1, got " + frameSkip);
+    this.actions = actions;
+    this.frameSkip = frameSkip;
+
+    for (Future<Void> future : pool.invokeAll(steps))
+    {
+        try
+        {
+            future.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("[Mario AI EXCEPTION] : vector step interrupted", e);
+        } catch (ExecutionException e)
+        {
+            throw new RuntimeException("[Mario AI EXCEPTION] : world step failed: " + e.getCause(), e.getCause());
+        }
+    }
+}
+
+private void stepWorld(final int i)
+{
+    final MarioEnvironment world = worlds[i];
+    rewards[i] = world.repeatAction(actions[i], frameSkip);
+    statuses[i] = world.getMarioStatus();
+    dones[i] = world.isLevelFinished();
+    if (dones[i])
+        world.reset(options[i]);
+    world.serializeStepObservation(observations, i * observationSize);
+}
+
+public int getNumberOfWorlds()
+{
+    return worlds.length;
+}
+
+/**
+ * @return number of ints per world in {@link #getObservations()}
+ */
+public int getObservationSize()
+{
+    return observationSize;
+}
+
+public int[] getObservations()
+{
+    return observations;
+}
+
+public int[] getRewards()
+{
+    return rewards;
+}
+
+public boolean[] getDones()
+{
+    return dones;
+}
+
+public int[] getStatuses()
+{
+    return statuses;
+}
+
+/**
+ * @return the environment of one world, for inspection between steps; it must not be stepped directly
+ */
+public MarioEnvironment getWorld(final int i)
+{
+    return worlds[i];
+}
+
+public void shutdown()
+{
+    pool.shutdown();
+}
+}
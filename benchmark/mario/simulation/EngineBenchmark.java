@@ -0,0 +1,617 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright
+ *       notice, this list of conditions and the following disclaimer in the
+ *       documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the Mario AI nor the
+ *       names of its contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.mario.simulation;
+
+import ch.idsia.benchmark.mario.engine.GeneralizerLevelScene;
+import ch.idsia.benchmark.mario.engine.LevelScene;
+import ch.idsia.benchmark.mario.engine.level.Level;
+import ch.idsia.benchmark.mario.engine.level.LevelCache;
+import ch.idsia.benchmark.mario.engine.level.LevelCodec;
+import ch.idsia.benchmark.mario.engine.level.LevelGenerator;
+import ch.idsia.benchmark.mario.engine.sprites.Mario;
+import ch.idsia.benchmark.mario.engine.sprites.Sprite;
+import ch.idsia.benchmark.mario.environments.Environment;
+import ch.idsia.benchmark.mario.environments.MarioEnvironment;
+import ch.idsia.benchmark.mario.environments.StepChannel;
+import ch.idsia.tools.MarioAIOptions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * Hand-rolled throughput measurements of the simulation core. Every run is preceded by a warm-up of the
+ * same size so that the timed part executes compiled code.
+ * <p/>
+ * Usage: <code>EngineBenchmark [levelTick|headless|observation|window|stepLatency|tensor|levelStorage|levelGeneration|all]</code>
+ */
+
+public final class EngineBenchmark
+{
+private static final int[] LEVEL_LENGTHS = {256, 1024, 4096};
+private static final int TICKS = 20000;
+
+private EngineBenchmark() {}
+
+public static void main(String[] args)
+{
+    final String mode = args.length > 0 ? args[0] : "all";
+    final boolean all = mode.equals("all");
+    if (all || mode.equals("levelTick"))
+        levelTick();
+    if (all || mode.equals("headless"))
+        headless();
+    if (all || mode.equals("observation"))
+        observation();
+    if (all || mode.equals("window"))
+        window();
+    if (all || mode.equals("stepLatency"))
+        stepLatency();
+    if (all || mode.equals("tensor"))
+        tensor();
+    if (all || mode.equals("levelStorage"))
+        levelStorage();
+    if (all || mode.equals("levelGeneration"))
+        levelGeneration();
+}
+
+/**
+ * Block data decay of Level.tick: the former scan of the whole length * height grid against the set of
+ * active cells, alone and as part of a complete LevelScene tick.
+ */
+static void levelTick()
+{
+    System.out.println("levelTick: ticks per second");
+    System.out.printf("%8s %16s %16s %16s %16s%n", "length", "Level scan", "Level active", "scene + scan", "scene");
+    for (final int length : LEVEL_LENGTHS)
+    {
+        final LevelScene scene = newScene("-ll " + length + " -ls 7 -ld 2 -i on -tl 10000");
+        final Level level = scene.level;
+        // the block data grid in the layout of the old Level, for a copy of its full-grid tick
+        final byte[][] data = new byte[level.length][level.height];
+
+        // a few bricks are bumped again before every tick, so that both keep a steady set of counting cells
+        final Runnable scan = new Runnable()
+        {
+            public void run()
+            {
+                for (int x = 8; x < level.length; x += 64)
+                    data[x][5] = 4;
+                for (int x = 0; x < level.length; x++)
+                    for (int y = 0; y < level.height; y++)
+                        if (data[x][y] > 0) data[x][y]--;
+            }
+        };
+        final Runnable active = new Runnable()
+        {
+            public void run()
+            {
+                for (int x = 8; x < level.length; x += 64)
+                    level.setBlockData(x, 5, (byte) 4);
+                level.tick();
+            }
+        };
+
+        final double levelScan = measure(scan, TICKS);
+        final double levelActive = measure(active, TICKS);
+        final double sceneScan = measure(sceneTick(scene, scan), TICKS / 4);
+        final double sceneOnly = measure(sceneTick(scene, null), TICKS / 4);
+        System.out.printf("%8d %16.0f %16.0f %16.0f %16.0f%n", length, levelScan, levelActive, sceneScan, sceneOnly);
+    }
+}
+
+/**
+ * LevelScene.tick with visualization off, keeping the sprite sheets, animation frames and cosmetic
+ * sprites up to date as before, against the headless profile that skips them.
+ */
+static void headless()
+{
+    System.out.println("headless: ticks per second");
+    System.out.printf("%8s %8s %16s %16s%n", "length", "diff", "visual state", "headless");
+    for (final int length : LEVEL_LENGTHS)
+        for (int difficulty = 0; difficulty <= 10; difficulty += 5)
+        {
+            final String options = "-ll " + length + " -ls 7 -ld " + difficulty + " -i on -tl 10000";
+            final double visual = measure(sceneTick(newScene(options, false), null), TICKS);
+            final double headless = measure(sceneTick(newScene(options, true), null), TICKS);
+            System.out.printf("%8d %8d %16.0f %16.0f%n", length, difficulty, visual, headless);
+        }
+}
+
+/**
+ * The full serialized observation built from the level, enemies and Mario state observations, each
+ * serialized on its own and copied into a new array, against the fused single pass into one buffer.
+ */
+static void observation()
+{
+    System.out.println("observation: observations per second");
+    System.out.printf("%8s %16s %16s%n", "field", "three passes", "fused");
+    for (final int field : new int[]{19, 41, 81})
+    {
+        final MarioEnvironment environment = MarioEnvironment.newInstance();
+        environment.setHeadless(true);
+        environment.reset("-ls 7 -ld 5 -i on -tl 10000 -vis off -rfw " + field + " -rfh " + field);
+        final boolean[] keys = new boolean[Environment.numberOfKeys];
+        keys[Mario.KEY_RIGHT] = true;
+        for (int i = 0; i < 300; i++)
+        {
+            environment.performAction(keys);
+            environment.tick();
+        }
+
+        final int size = field * field;
+        final int[] buffer = new int[size * 2 + 11];
+        final Runnable threePasses = new Runnable()
+        {
+            public void run()
+            {
+                final int[] obs = new int[size * 2 + 11];
+                System.arraycopy(environment.getSerializedLevelSceneObservationZ(1), 0, obs, 0, size);
+                System.arraycopy(environment.getSerializedEnemiesObservationZ(0), 0, obs, size, size);
+                System.arraycopy(environment.getMarioState(), 0, obs, size * 2, 11);
+            }
+        };
+        final Runnable fused = new Runnable()
+        {
+            public void run()
+            {
+                environment.serializeFullObservationZZ(1, 0, buffer, 0);
+            }
+        };
+        System.out.printf("%8d %16.0f %16.0f%n", field, measure(threePasses, TICKS * 5), measure(fused, TICKS * 5));
+    }
+}
+
+/**
+ * The fused observation with the level scene rebuilt every call against the incremental ring buffer
+ * window, while Mario runs through the level; only the observation calls are timed.
+ */
+static void window()
+{
+    System.out.println("window: observations per second");
+    System.out.printf("%8s %16s %16s%n", "field", "rebuilt", "incremental");
+    for (final int field : new int[]{19, 41, 81, 161})
+    {
+        final double rebuilt = observeWhileRunning(field, false);
+        final double incremental = observeWhileRunning(field, true);
+        System.out.printf("%8d %16.0f %16.0f%n", field, rebuilt, incremental);
+    }
+}
+
+private static double observeWhileRunning(final int field, final boolean incremental)
+{
+    final String options = "-ll 1024 -ls 7 -ld 2 -i on -tl 10000 -vis off -rfw " + field + " -rfh " + field;
+    final MarioEnvironment environment = MarioEnvironment.newInstance();
+    environment.setHeadless(true);
+    environment.setIncrementalObservation(incremental);
+    environment.reset(options);
+    final boolean[] keys = new boolean[Environment.numberOfKeys];
+    keys[Mario.KEY_RIGHT] = true;
+    keys[Mario.KEY_SPEED] = true;
+    final int[] buffer = new int[field * field * 2 + 11];
+
+    long time = 0;
+    for (int i = 0; i < TICKS * 2; i++)
+    {
+        if (environment.isLevelFinished())
+            environment.reset(options);
+        keys[Mario.KEY_JUMP] = environment.getTick() % 24 < 12;
+        environment.performAction(keys);
+        environment.tick();
+        final long start = System.nanoTime();
+        environment.serializeFullObservationZZ(1, 0, buffer, 0);
+        // the first half is warm-up
+        if (i >= TICKS)
+            time += System.nanoTime() - start;
+    }
+    return TICKS * 1e9 / time;
+}
+
+/**
+ * Latency of one agent step (action, tick, full observation) called directly in this JVM, against a
+ * round trip through a {@link StepChannel} in /dev/shm served by another thread, which is what an agent
+ * in another process sees apart from scheduling.
+ */
+static void stepLatency()
+{
+    final String options = "-ls 7 -ld 2 -i on -tl 10000 -vis off";
+    final int steps = TICKS * 2;
+    final boolean[] keys = new boolean[Environment.numberOfKeys];
+    keys[Mario.KEY_RIGHT] = true;
+    final int[] obs = new int[19 * 19 * 2 + 11];
+
+    final MarioEnvironment direct = MarioEnvironment.newInstance();
+    direct.setHeadless(true);
+    direct.reset(options);
+    final long[] directLatencies = new long[steps];
+    for (int i = 0; i < steps; i++)
+    {
+        if (direct.isLevelFinished())
+            direct.reset(options);
+        final long start = System.nanoTime();
+        direct.performAction(keys);
+        direct.tick();
+        direct.serializeFullObservationZZ(1, 0, obs, 0);
+        directLatencies[i] = System.nanoTime() - start;
+    }
+
+    final File shm = new File("/dev/shm");
+    final File file = new File(shm.isDirectory() ? shm : new File(System.getProperty("java.io.tmpdir")), "mario-step-benchmark");
+    final long[] channelLatencies = new long[steps];
+    try
+    {
+        final StepChannel server = StepChannel.create(file, 4, 19, 19, 1, 0);
+        final MarioEnvironment environment = MarioEnvironment.newInstance();
+        environment.setHeadless(true);
+        environment.reset(options);
+        final Thread serving = new Thread()
+        {
+            public void run()
+            {
+                server.serve(environment, new MarioAIOptions(options));
+            }
+        };
+        serving.start();
+        final StepChannel agent = StepChannel.open(file);
+        for (int i = 0; i < steps; i++)
+        {
+            final long start = System.nanoTime();
+            agent.sendAction(keys, 1);
+            agent.receive(obs);
+            channelLatencies[i] = System.nanoTime() - start;
+            if (agent.isLastLevelFinished())
+            {
+                agent.sendReset();
+                agent.receive(obs);
+            }
+        }
+        agent.sendClose();
+        serving.join();
+    } catch (IOException e)
+    {
+        System.err.println("[Mario AI EXCEPTION] : step channel could not be mapped: " + e);
+        return;
+    } catch (InterruptedException e)
+    {
+        Thread.currentThread().interrupt();
+        return;
+    } finally
+    {
+        file.delete();
+    }
+
+    System.out.println("stepLatency: nanoseconds per step, second half of " + steps + " steps");
+    System.out.printf("%10s %10s %10s %10s %10s %10s%n", "", "p50", "p90", "p99", "p99.9", "max");
+    printLatencies("direct", Arrays.copyOfRange(directLatencies, steps / 2, steps));
+    printLatencies("channel", Arrays.copyOfRange(channelLatencies, steps / 2, steps));
+}
+
+/**
+ * One-hot planes of the default tensor channels as an agent builds them from the merged Z level 0
+ * observation, against the planes written by the environment as floats and as bits.
+ */
+static void tensor()
+{
+    // merged observation value -> plane of the default channels, -1 for none
+    final int[] planeOf = new int[256];
+    Arrays.fill(planeOf, -1);
+    for (final int value : new int[]{GeneralizerLevelScene.BORDER_CANNOT_PASS_THROUGH, GeneralizerLevelScene.CANNON_MUZZLE,
+            GeneralizerLevelScene.CANNON_TRUNK, GeneralizerLevelScene.FLOWER_POT})
+        planeOf[value & 0xff] = 0;
+    planeOf[GeneralizerLevelScene.BORDER_HILL & 0xff] = 1;
+    planeOf[GeneralizerLevelScene.COIN_ANIM & 0xff] = 2;
+    planeOf[GeneralizerLevelScene.UNBREAKABLE_BRICK & 0xff] = 3;
+    planeOf[GeneralizerLevelScene.BREAKABLE_BRICK & 0xff] = 4;
+    final int[][] kinds = {{Sprite.KIND_GOOMBA, Sprite.KIND_GOOMBA_WINGED},
+            {Sprite.KIND_RED_KOOPA, Sprite.KIND_RED_KOOPA_WINGED, Sprite.KIND_GREEN_KOOPA, Sprite.KIND_GREEN_KOOPA_WINGED},
+            {Sprite.KIND_SPIKY, Sprite.KIND_SPIKY_WINGED}, {Sprite.KIND_ENEMY_FLOWER}, {Sprite.KIND_BULLET_BILL},
+            {Sprite.KIND_SHELL}, {}, {Sprite.KIND_GREEN_MUSHROOM}, {Sprite.KIND_FIRE_FLOWER}, {Sprite.KIND_FIREBALL}};
+    for (int p = 0; p < kinds.length; p++)
+        for (final int kind : kinds[p])
+            planeOf[kind & 0xff] = 5 + p;
+
+    System.out.println("tensor: observations per second");
+    System.out.printf("%8s %16s %16s %16s%n", "field", "agent-side", "native floats", "native bits");
+    for (final int field : new int[]{19, 41, 81})
+    {
+        final MarioEnvironment environment = MarioEnvironment.newInstance();
+        environment.setHeadless(true);
+        environment.reset("-ls 7 -ld 5 -i on -tl 10000 -vis off -rfw " + field + " -rfh " + field);
+        final boolean[] keys = new boolean[Environment.numberOfKeys];
+        keys[Mario.KEY_RIGHT] = true;
+        for (int i = 0; i < 300; i++)
+        {
+            environment.performAction(keys);
+            environment.tick();
+        }
+
+        final int plane = field * field;
+        final int channels = environment.getTensorChannelCount();
+        final float[] floats = new float[channels * plane];
+        final long[] bits = new long[(channels * plane + 63) / 64];
+        final int[] ego = environment.getMarioEgoPos();
+        final Runnable agentSide = new Runnable()
+        {
+            public void run()
+            {
+                final byte[][] merged = environment.getMergedObservationZZ(0, 0);
+                Arrays.fill(floats, 0);
+                for (int row = 0; row < field; row++)
+                    for (int col = 0; col < field; col++)
+                    {
+                        final int p = planeOf[merged[row][col] & 0xff];
+                        if (p >= 0)
+                            floats[p * plane + row * field + col] = 1;
+                    }
+                floats[11 * plane + ego[0] * field + ego[1]] = 1;
+            }
+        };
+        final Runnable nativeFloats = new Runnable()
+        {
+            public void run()
+            {
+                environment.serializeTensorObservation(floats, 0);
+            }
+        };
+        final Runnable nativeBits = new Runnable()
+        {
+            public void run()
+            {
+                environment.serializeTensorObservationBits(bits, 0);
+            }
+        };
+        System.out.printf("%8d %16.0f %16.0f %16.0f%n", field, measure(agentSide, TICKS * 5), measure(nativeFloats, TICKS * 5),
+                measure(nativeBits, TICKS * 5));
+    }
+}
+
+/**
+ * Costs that depend on how Level stores its cells: generating a level, serializing it with
+ * Level.save and reading it back, and the full observation of a large receptive field.
+ */
+static void levelStorage()
+{
+    System.out.println("levelStorage: levels or observations per second, file bytes");
+    System.out.printf("%8s %12s %12s %12s %12s %12s %12s %12s %12s%n", "length", "generate", "cached", "save + load", "file load",
+            "bytes", "codec load", "codec bytes", "observation");
+    for (final int length : LEVEL_LENGTHS)
+    {
+        final int[] seed = new int[1];
+        final Runnable generate = new Runnable()
+        {
+            public void run()
+            {
+                LevelGenerator.createLevel(new MarioAIOptions("-ll " + length + " -ls " + (seed[0]++ % 50) + " -ld 5 -vis off"));
+            }
+        };
+        final int levels = Math.max(20, 100 * 256 / length);
+        final double generated = measure(generate, levels);
+        final LevelCache cache = new LevelCache(50 * length * 15);
+        final Runnable cached = new Runnable()
+        {
+            public void run()
+            {
+                cache.getLevel(new MarioAIOptions("-ll " + length + " -ls " + (seed[0]++ % 50) + " -ld 5 -vis off"));
+            }
+        };
+        final double copied = measure(cached, levels * 4);
+
+        final Level level = LevelGenerator.createLevel(new MarioAIOptions("-ll " + length + " -ls 7 -ld 5 -vis off"));
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final Runnable saveLoad = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    bytes.reset();
+                    final ObjectOutputStream out = new ObjectOutputStream(bytes);
+                    Level.save(level, out);
+                    out.flush();
+                    Level.load(new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+                } catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        final double savedLoaded = measure(saveLoad, levels);
+
+        final File serialized;
+        final File encoded;
+        try
+        {
+            serialized = File.createTempFile("level", ".lvl");
+            encoded = File.createTempFile("level", ".mlv");
+            serialized.deleteOnExit();
+            encoded.deleteOnExit();
+            final ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(serialized)));
+            Level.save(level, out);
+            out.close();
+            LevelCodec.write(level, encoded, false);
+        } catch (IOException e)
+        {
+            throw new RuntimeException(e);
+        }
+        final Runnable fileLoad = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    final ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(serialized)));
+                    Level.load(in);
+                    in.close();
+                } catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        final Runnable codecLoad = new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    LevelCodec.read(encoded);
+                } catch (IOException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        final double fileLoaded = measure(fileLoad, levels * 4);
+        final double codecLoaded = measure(codecLoad, levels * 4);
+
+        final MarioEnvironment environment = MarioEnvironment.newInstance();
+        environment.setHeadless(true);
+        environment.reset("-ll " + length + " -ls 7 -ld 5 -i on -tl 10000 -vis off -rfw 81 -rfh 81");
+        final int[] buffer = new int[81 * 81 * 2 + 11];
+        final boolean[] keys = new boolean[Environment.numberOfKeys];
+        keys[Mario.KEY_RIGHT] = true;
+        for (int i = 0; i < 300; i++)
+        {
+            environment.performAction(keys);
+            environment.tick();
+        }
+        final Runnable observe = new Runnable()
+        {
+            public void run()
+            {
+                environment.serializeFullObservationZZ(1, 0, buffer, 0);
+            }
+        };
+        System.out.printf("%8d %12.0f %12.0f %12.0f %12.0f %12d %12.0f %12d %12.0f%n", length, generated, copied, savedLoaded, fileLoaded,
+                serialized.length(), codecLoaded, encoded.length(), measure(observe, TICKS * 2));
+    }
+}
+
+static void levelGeneration()
+{
+    System.out.println("levelGeneration: microseconds per createLevel, nanoseconds per cell");
+    System.out.printf("%8s %16s %16s%n", "length", "level", "cell");
+    for (final int length : new int[]{256, 1024, 4096, 16384})
+    {
+        final int[] seed = new int[1];
+        final Runnable generate = new Runnable()
+        {
+            public void run()
+            {
+                final int i = seed[0]++;
+                LevelGenerator.createLevel(new MarioAIOptions("-ll " + length + " -ls " + i % 50 + " -lt " + i % 3 + " -ld 5 -vis off"));
+            }
+        };
+        final double levels = measure(generate, Math.max(30, 200 * 256 / length));
+        System.out.printf("%8d %16.1f %16.2f%n", length, 1e6 / levels, 1e9 / levels / (length * 15));
+    }
+}
+
+private static void printLatencies(final String name, final long[] latencies)
+{
+    Arrays.sort(latencies);
+    final int n = latencies.length;
+    System.out.printf("%10s %10d %10d %10d %10d %10d%n", name, latencies[n / 2], latencies[n * 9 / 10],
+            latencies[n * 99 / 100], latencies[n * 999 / 1000], latencies[n - 1]);
+    // histogram over powers of two
+    final int[] buckets = new int[64];
+    for (final long latency : latencies)
+        buckets[63 - Long.numberOfLeadingZeros(Math.max(1, latency))]++;
+    for (int b = 0; b < buckets.length; b++)
+        if (buckets[b] > 0)
+            System.out.printf("%10s %10s %9d%% %s%n", "", "< " + (2L << b), (int) (100L * buckets[b] / n), bar(buckets[b] * 50 / n));
+}
+
+private static String bar(final int length)
+{
+    final char[] bar = new char[length];
+    Arrays.fill(bar, '#');
+    return new String(bar);
+}
+
+static LevelScene newScene(final String options)
+{
+    return newScene(options, false);
+}
+
+static LevelScene newScene(final String options, final boolean headless)
+{
+    final LevelScene scene = new LevelScene();
+    scene.setHeadless(headless);
+    scene.reset(new MarioAIOptions(options + " -vis off"));
+    return scene;
+}
+
+/**
+ * @return one tick of the scene with Mario running and jumping to the right, restarting the episode when
+ *         it ends; extra work, if any, is done after every tick
+ */
+static Runnable sceneTick(final LevelScene scene, final Runnable extra)
+{
+    final boolean[] keys = new boolean[Environment.numberOfKeys];
+    keys[Mario.KEY_RIGHT] = true;
+    keys[Mario.KEY_SPEED] = true;
+    final MarioAIOptions options = new MarioAIOptions("-ll " + scene.getLevelLength() + " -ls " + scene.getLevelSeed()
+            + " -ld " + scene.getLevelDifficulty() + " -i on -tl 10000 -vis off");
+    return new Runnable()
+    {
+        public void run()
+        {
+            if (scene.isLevelFinished())
+                scene.reset(options);
+            keys[Mario.KEY_JUMP] = scene.tickCount % 24 < 12;
+            scene.performAction(keys);
+            scene.tick();
+            if (extra != null)
+                extra.run();
+        }
+    };
+}
+
+/**
+ * @return calls of work per second, measured after a warm-up of the same number of calls
+ */
+static double measure(final Runnable work, final int calls)
+{
+    for (int i = 0; i < calls; i++)
+        work.run();
+    final long start = System.nanoTime();
+    for (int i = 0; i < calls; i++)
+        work.run();
+    return calls * 1e9 / (System.nanoTime() - start);
+}
+}
@@ -81,7 +81,6 @@ public void setUpOptions(String[] args)
     GlobalOptions.isVisualization = isVisualization();
     GlobalOptions.FPS = getFPS() /*GlobalOptions.FPS*/;
 //    GlobalOptions.isPauseWorld = isPauseWorld();
-    GlobalOptions.isPowerRestoration = isPowerRestoration();
 //        GlobalOptions.isTimer = isTimer();
 }
 
@@ -29,6 +29,7 @@ package ch.idsia.benchmark.tasks;
 
 import ch.idsia.agents.Agent;
 import ch.idsia.benchmark.mario.engine.GlobalOptions;
+import ch.idsia.benchmark.mario.engine.level.LevelCache;
 import ch.idsia.benchmark.mario.environments.Environment;
 import ch.idsia.benchmark.mario.environments.MarioEnvironment;
 import ch.idsia.tools.EvaluationInfo;
@@ -145,6 +146,15 @@ public boolean isFinished()
     return false;
 }
 
+/**
+ * Lets the level of an upcoming episode be generated in the background while the current one is played, see
+ * {@link LevelCache#prefetch}. The options may be changed as soon as this returns.
+ */
+protected void prefetchLevel(final MarioAIOptions upcoming)
+{
+    LevelCache.getShared().prefetch(upcoming);
+}
+
 public void reset()
 {
     agent = options.getAgent();
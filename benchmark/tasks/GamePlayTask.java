@@ -100,19 +100,14 @@ public void doEpisodes(final int amount, final boolean verbose, final int repeti
 {
     for (int i = 0; i < amount; ++i)
     {
-        options.setLevelLength((200 + (i * 12) + (options.getLevelRandSeed() % (i + 1))) % 512);
-        options.setLevelType(i % 3);
-        options.setLevelRandSeed(options.getLevelRandSeed() + i);
-        options.setLevelDifficulty(i / 20);
-        options.setGapsCount(i % 3 == 0);
-        options.setCannonsCount(i % 3 != 1);
-        options.setCoinsCount(i % 5 != 0);
-        options.setBlocksCount(i % 4 != 0);
-        options.setHiddenBlocksCount(i % 6 != 0);
-        options.setDeadEndsCount(i % 10 == 0);
-        options.setLevelLadder(i % 10 == 2);
-        options.setFrozenCreatures(i % 3 == 1);
-        options.setEnemies(i % 4 == 1 ? "off" : "");
+        final int seed = options.getLevelRandSeed();
+        if (i + 1 < amount)
+        {
+            // the next episode starts from seed + i
+            setEpisodeOptions(i + 1, seed + i);
+            prefetchLevel(options);
+        }
+        setEpisodeOptions(i, seed);
         this.reset();
         if (!this.runSingleEpisode(repetitionsOfSingleEpisode))
             difqualifications++;
@@ -124,6 +119,23 @@ public void doEpisodes(final int amount, final boolean verbose, final int repeti
     }
 }
 
+private void setEpisodeOptions(final int i, final int seed)
+{
+    options.setLevelLength((200 + (i * 12) + (seed % (i + 1))) % 512);
+    options.setLevelType(i % 3);
+    options.setLevelRandSeed(seed + i);
+    options.setLevelDifficulty(i / 20);
+    options.setGapsCount(i % 3 == 0);
+    options.setCannonsCount(i % 3 != 1);
+    options.setCoinsCount(i % 5 != 0);
+    options.setBlocksCount(i % 4 != 0);
+    options.setHiddenBlocksCount(i % 6 != 0);
+    options.setDeadEndsCount(i % 10 == 0);
+    options.setLevelLadder(i % 10 == 2);
+    options.setFrozenCreatures(i % 3 == 1);
+    options.setEnemies(i % 4 == 1 ? "off" : "");
+}
+
 public EvaluationInfo getEvaluationInfo()
 {
     return localEvaluationInfo;
@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2009-2010, Sergey Karakovskiy and Julian Togelius
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *  Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *  Redistributions in binary form must reproduce the above copyright
+ * notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *  Neither the name of the Mario AI nor the
+ * names of its contributors may be used to endorse or promote products
+ * derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED.
+ * IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT,
+ * INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT
+ * NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR
+ * PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+
+
+package ch.idsia.benchmark.tasks;
+
+import ch.idsia.agents.Agent;
+import ch.idsia.benchmark.mario.engine.GlobalOptions;
+import ch.idsia.benchmark.mario.environments.MarioEnvironment;
+import ch.idsia.tools.EvaluationInfo;
+import ch.idsia.tools.MarioAIOptions;
+import ch.idsia.tools.punj.PunctualJudge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many independent episodes on a work-stealing pool. Every job is played in an environment of
+ * its own (see {@link MarioEnvironment#newInstance()}), with an agent made by the job's factory, so
+ * jobs never share simulation state. Intended for batch evaluation without visualization, e.g. scoring a
+ * whole generation of candidate controllers. Agents see the same observations as in {@link BasicTask} unless a
+ * job asks for a headless world, see {@link Job#Job(AgentFactory, MarioAIOptions, boolean)}.
+ * <p/>
+ * The bytecode count of {@link PunctualJudge} is one counter for the whole JVM, so it cannot be told apart
+ * between concurrent episodes; results report it as 0.
+ */
+
+public class ParallelEvaluator
+{
+/**
+ * Creates a fresh agent for every job. Agents are stateful and are never shared between threads.
+ */
+public interface AgentFactory
+{
+public Agent createAgent();
+}
+
+public static final class Job
+{
+private final AgentFactory agentFactory;
+private final MarioAIOptions options;
+private final boolean headless;
+
+public Job(final AgentFactory agentFactory, final MarioAIOptions options)
+{
+    this(agentFactory, options, false);
+}
+
+/**
+ * @param headless whether the episode is played without cosmetic sprites, which is faster but can change
+ *                 the enemy observations, see {@link MarioEnvironment#setHeadless(boolean)}
+ */
+public Job(final AgentFactory agentFactory, final MarioAIOptions options, final boolean headless)
+{
+    this.agentFactory = agentFactory;
+    this.options = options;
+    this.headless = headless;
+}
+
+public AgentFactory getAgentFactory()
+{
+    return agentFactory;
+}
+
+public MarioAIOptions getOptions()
+{
+    return options;
+}
+
+public boolean isHeadless()
+{
+    return headless;
+}
+}
+
+private final ForkJoinPool pool;
+
+public ParallelEvaluator()
+{
+    this(Runtime.getRuntime().availableProcessors());
+}
+
+public ParallelEvaluator(final int parallelism)
+{
+    this.pool = new ForkJoinPool(parallelism);
+}
+
+/**
+ * Plays one episode per job and blocks until all of them are finished.
+ *
+ * @param jobs episodes to play
+ * @return evaluation of every job, in the order the jobs were submitted
+ */
+public List<EvaluationInfo> evaluate(final List<Job> jobs)
+{
+    final List<Callable<EvaluationInfo>> episodes = new ArrayList<Callable<EvaluationInfo>>(jobs.size());
+    for (final Job job : jobs)
+        episodes.add(new Callable<EvaluationInfo>()
+        {
+            public EvaluationInfo call()
+            {
+                return runEpisode(job);
+            }
+        });
+
+    final List<EvaluationInfo> results = new ArrayList<EvaluationInfo>(jobs.size());
+    for (Future<EvaluationInfo> future : pool.invokeAll(episodes))
+    {
+        try
+        {
+            results.add(future.get());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("[Mario AI EXCEPTION] : parallel evaluation interrupted", e);
+        } catch (ExecutionException e)
+        {
+            throw new RuntimeException("[Mario AI EXCEPTION] : episode failed: " + e.getCause(), e.getCause());
+        }
+    }
+    return results;
+}
+
+public void shutdown()
+{
+    pool.shutdown();
+}
+
+private static EvaluationInfo runEpisode(final Job job)
+{
+    // private copy: the caller's options object is typically shared by all jobs of a generation,
+    // and resetting an environment writes the agent into it
+    final MarioAIOptions options = new MarioAIOptions(job.getOptions().asString());
+    final Agent agent = job.getAgentFactory().createAgent();
+    options.setAgent(agent);
+    options.setVisualization(false);
+
+    final MarioEnvironment environment = MarioEnvironment.newInstance();
+    environment.setHeadless(job.isHeadless());
+    environment.reset(options);
+    agent.reset();
+    agent.setObservationDetails(environment.getReceptiveFieldWidth(),
+            environment.getReceptiveFieldHeight(),
+            environment.getMarioEgoPos()[0],
+            environment.getMarioEgoPos()[1]);
+
+    // unlike BasicTask there is no per-action time bound: wall-clock timing is meaningless
+    // while all cores are busy with other episodes
+    while (!environment.isLevelFinished())
+    {
+        environment.tick();
+        if (!GlobalOptions.isGameplayStopped)
+        {
+            agent.integrateObservation(environment);
+            agent.giveIntermediateReward(environment.getIntermediateReward());
+            environment.performAction(agent.getAction());
+        }
+    }
+    environment.closeRecorder();
+    final EvaluationInfo evaluationInfo = environment.getEvaluationInfo().clone();
+    evaluationInfo.setTaskName(ParallelEvaluator.class.getSimpleName());
+    // counted by all episodes running at the time, see the class comment
+    evaluationInfo.bytecodeInstructions = 0;
+    return evaluationInfo;
+}
+}